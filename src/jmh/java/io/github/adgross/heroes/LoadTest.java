@@ -0,0 +1,285 @@
+package io.github.adgross.heroes;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.repository.HeroStore;
+import io.github.adgross.heroes.repository.InMemoryHeroStore;
+import io.github.adgross.heroes.repository.TableBootstrap;
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+/**
+ * Fixed rate HTTP load test of the application, started in this JVM with the in-memory store or
+ * against DynamoDB. Requests are sent when due whether or not the earlier ones completed, and
+ * their latency is measured from that due time, so a stalled server shows up in the percentiles
+ * instead of slowing the test down. Run by the loadTest task, settings are the load.* system
+ * properties, see the README. Writes latency percentiles and throughput per operation as json.
+ */
+public final class LoadTest {
+  private static final String HEROES = "/api/v1/heroes";
+  private static final List<String> OPERATIONS =
+      List.of("findById", "create", "update", "list", "items");
+
+  private final String store = System.getProperty("load.store", "in-memory");
+  private final int rate = Integer.getInteger("load.rate", 500);
+  private final Duration duration = duration("load.duration", "60s");
+  private final Duration warmup = duration("load.warmup", "10s");
+  private final int heroes = Integer.getInteger("load.heroes", 1000);
+  private final String mix = System.getProperty("load.mix",
+      "findById:70,create:10,update:10,list:5,items:5");
+  private final int maxInFlight = Integer.getInteger("load.max-in-flight", 1000);
+  private final long seed = Long.getLong("load.seed", 42);
+  private final File output = new File(System.getProperty("load.output", "load-test.json"));
+
+  private final HttpClient http = HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_1_1)
+      .build();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final List<Operation> operations = new ArrayList<>();
+  private int totalWeight;
+  private String baseUri;
+  private List<String> ids;
+
+  private LoadTest() {
+    for (var weighted : mix.split(",")) {
+      var parts = weighted.trim().split(":");
+      if (parts.length != 2 || !OPERATIONS.contains(parts[0])) {
+        throw new IllegalArgumentException("Invalid load.mix entry " + weighted
+            + ", expected one of " + OPERATIONS + " with a weight, like findById:70");
+      }
+      var weight = Integer.parseInt(parts[1]);
+      totalWeight += weight;
+      operations.add(new Operation(parts[0], totalWeight));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new LoadTest().run();
+  }
+
+  private void run() throws Exception {
+    var inMemory = store.equals(InMemoryHeroStore.PROFILE);
+    var suffix = "-load-" + UUID.randomUUID();
+    var appArgs = new ArrayList<>(List.of("--server.port=0"));
+    if (inMemory) {
+      appArgs.add("--spring.profiles.active=" + InMemoryHeroStore.PROFILE);
+    } else {
+      appArgs.add("--dynamodb.table=heroes" + suffix);
+      appArgs.add("--dynamodb.stats.table=heroes-stats" + suffix);
+    }
+    var context = SpringApplication.run(HeroesApplication.class, appArgs.toArray(new String[0]));
+    try {
+      context.getBeanProvider(TableBootstrap.class)
+          .ifAvailable(tables -> tables.ready().block(Duration.ofMinutes(2)));
+      baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+      ids = Flux.range(0, heroes)
+          .map(i -> new Hero(UUID.randomUUID().toString(), "Hero " + i, "Load", i % 10))
+          .as(context.getBean(HeroStore.class)::putAll)
+          .map(Hero::getId)
+          .collectList()
+          .block();
+      send();
+      write();
+    } finally {
+      if (!inMemory) {
+        deleteTables(context);
+      }
+      context.close();
+    }
+  }
+
+  private void send() throws InterruptedException {
+    var random = new SplittableRandom(seed);
+    var interval = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+    var start = System.nanoTime();
+    var measureFrom = start + warmup.toNanos();
+    var end = measureFrom + duration.toNanos();
+    System.out.printf("Sending %d requests/s for %s after a %s warmup%n", rate, duration, warmup);
+    for (long i = 0; ; i++) {
+      var due = start + (long) (i * interval);
+      if (due >= end) {
+        break;
+      }
+      var wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      var operation = pick(random);
+      var request = request(operation.name, random);
+      var measured = due >= measureFrom;
+      if (inFlight.get() >= maxInFlight) {
+        if (measured) {
+          operation.dropped.increment();
+        }
+        continue;
+      }
+      inFlight.incrementAndGet();
+      http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+          .whenComplete((response, error) -> {
+            var latency = System.nanoTime() - due;
+            inFlight.decrementAndGet();
+            if (!measured) {
+              return;
+            }
+            operation.latency.recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+            if (error != null || response.statusCode() >= 400) {
+              operation.errors.increment();
+            }
+          });
+    }
+    var drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+      Thread.sleep(10);
+    }
+  }
+
+  private Operation pick(SplittableRandom random) {
+    var value = random.nextInt(totalWeight);
+    for (var operation : operations) {
+      if (value < operation.upTo) {
+        return operation;
+      }
+    }
+    throw new IllegalStateException("Weights exhausted at " + value);
+  }
+
+  private HttpRequest request(String operation, SplittableRandom random) {
+    var id = ids.get(random.nextInt(ids.size()));
+    var hero = "{\"name\":\"Hero " + random.nextInt(heroes) + "\",\"universe\":\"Load\","
+        + "\"films\":" + random.nextInt(10) + "}";
+    switch (operation) {
+      case "findById":
+        return HttpRequest.newBuilder(uri(HEROES + "/" + id)).build();
+      case "create":
+        return HttpRequest.newBuilder(uri(HEROES))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(hero))
+            .build();
+      case "update":
+        return HttpRequest.newBuilder(uri(HEROES + "/" + id))
+            .header("Content-Type", "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString(hero))
+            .build();
+      case "list":
+        return HttpRequest.newBuilder(uri(HEROES)).build();
+      case "items":
+        return HttpRequest.newBuilder(uri(HEROES + "/items"))
+            .header("Accept", "application/x-ndjson")
+            .build();
+      default:
+        throw new IllegalArgumentException("Unknown operation " + operation);
+    }
+  }
+
+  private URI uri(String path) {
+    return URI.create(baseUri + path);
+  }
+
+  private void write() throws Exception {
+    var seconds = duration.toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+    var results = new LinkedHashMap<String, Object>();
+    var all = new Histogram(3);
+    long errors = 0;
+    long dropped = 0;
+    for (var operation : operations) {
+      all.add(operation.latency);
+      errors += operation.errors.sum();
+      dropped += operation.dropped.sum();
+      results.put(operation.name, result(operation.latency, operation.errors.sum(),
+          operation.dropped.sum(), seconds));
+    }
+    results.put("all", result(all, errors, dropped, seconds));
+
+    var settings = new LinkedHashMap<String, Object>();
+    settings.put("store", store);
+    settings.put("rate", rate);
+    settings.put("duration", duration.toString());
+    settings.put("warmup", warmup.toString());
+    settings.put("heroes", heroes);
+    settings.put("mix", mix);
+    settings.put("maxInFlight", maxInFlight);
+    settings.put("seed", seed);
+    settings.put("java", System.getProperty("java.version"));
+    settings.put("processors", Runtime.getRuntime().availableProcessors());
+    var report = new LinkedHashMap<String, Object>();
+    report.put("settings", settings);
+    report.put("operations", results);
+
+    output.getAbsoluteFile().getParentFile().mkdirs();
+    var writer = new ObjectMapper().writerWithDefaultPrettyPrinter();
+    writer.writeValue(output, report);
+    System.out.println(writer.writeValueAsString(results));
+    System.out.println("Results written to " + output);
+  }
+
+  private static Map<String, Object> result(Histogram latency, long errors, long dropped,
+                                            double seconds) {
+    var percentiles = new LinkedHashMap<String, Double>();
+    percentiles.put("p50", millis(latency.getValueAtPercentile(50)));
+    percentiles.put("p90", millis(latency.getValueAtPercentile(90)));
+    percentiles.put("p99", millis(latency.getValueAtPercentile(99)));
+    percentiles.put("p99.9", millis(latency.getValueAtPercentile(99.9)));
+    percentiles.put("max", millis(latency.getMaxValue()));
+    percentiles.put("mean", Math.round(latency.getMean()) / 1000.0);
+    var result = new LinkedHashMap<String, Object>();
+    result.put("requests", latency.getTotalCount());
+    result.put("errors", errors);
+    result.put("dropped", dropped);
+    result.put("throughput", Math.round(latency.getTotalCount() / seconds * 10) / 10.0);
+    result.put("latencyMs", percentiles);
+    return result;
+  }
+
+  private static double millis(long micros) {
+    return micros / 1000.0;
+  }
+
+  private static Duration duration(String property, String defaultValue) {
+    return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+  }
+
+  private static void deleteTables(ConfigurableApplicationContext context) {
+    var ddb = context.getBean(DynamoDbAsyncClient.class);
+    var env = context.getEnvironment();
+    ddb.deleteTable(table -> table.tableName(env.getProperty("dynamodb.table"))).join();
+    ddb.deleteTable(table -> table.tableName(env.getProperty("dynamodb.stats.table"))).join();
+  }
+
+  /**
+   * An operation of the mix, picked when the random value is below upTo.
+   */
+  private static final class Operation {
+    private final String name;
+    private final int upTo;
+    // microseconds from when the request was due to its response
+    private final Histogram latency = new ConcurrentHistogram(3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private Operation(String name, int upTo) {
+      this.name = name;
+      this.upTo = upTo;
+    }
+  }
+}
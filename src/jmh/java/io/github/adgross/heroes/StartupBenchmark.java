@@ -0,0 +1,75 @@
+package io.github.adgross.heroes;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+/**
+ * Time from starting the application to its first successful request, a page of heroes.
+ * Meant to run once per fresh JVM, see the startupBenchmark task, and needs DynamoDB.
+ * With tables=missing every start creates its own tables, and deletes them afterwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+
+  @Param({"false", "true"})
+  public boolean lazy;
+
+  @Param({"existing", "missing"})
+  public String tables;
+
+  private final HttpClient http = HttpClient.newHttpClient();
+  private ConfigurableApplicationContext context;
+
+  @Benchmark
+  public int firstRequest() throws Exception {
+    var suffix = tables.equals("missing") ? "-startup-" + UUID.randomUUID() : "";
+    context = SpringApplication.run(HeroesApplication.class,
+        "--server.port=0",
+        "--spring.main.lazy-initialization=" + lazy,
+        "--dynamodb.table=heroes" + suffix,
+        "--dynamodb.stats.table=heroes-stats" + suffix);
+    var port = context.getEnvironment().getRequiredProperty("local.server.port");
+    var request = HttpRequest.newBuilder(
+        URI.create("http://localhost:" + port + "/api/v1/heroes/page?limit=1")).build();
+    while (true) {
+      var status = http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+      if (status == 200) {
+        return status;
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void stop() {
+    if (context == null) {
+      return;
+    }
+    if (tables.equals("missing")) {
+      var ddb = context.getBean(DynamoDbAsyncClient.class);
+      var env = context.getEnvironment();
+      ddb.deleteTable(table -> table.tableName(env.getProperty("dynamodb.table"))).join();
+      ddb.deleteTable(table -> table.tableName(env.getProperty("dynamodb.stats.table"))).join();
+    }
+    context.close();
+    context = null;
+  }
+}
@@ -0,0 +1,124 @@
+package io.github.adgross.heroes.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Decoder;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * JSON against Smile for the list endpoint (an array) and the items endpoint (a stream),
+ * encoding and decoding with the WebFlux codecs. The bytes each format takes are printed at
+ * setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HeroCodecBenchmark {
+  private static final ResolvableType HERO_TYPE = ResolvableType.forClass(Hero.class);
+
+  @Param({"json", "smile"})
+  public String format;
+
+  @Param({"1", "100"})
+  public int heroes;
+
+  private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+  private Encoder<Object> encoder;
+  private Decoder<Object> decoder;
+  private MediaType arrayType;
+  private MediaType streamType;
+  private List<Hero> heroList;
+  private byte[] array;
+  private byte[] stream;
+
+  @Setup
+  public void setup() {
+    if (format.equals("json")) {
+      var mapper = new ObjectMapper();
+      encoder = new Jackson2JsonEncoder(mapper);
+      decoder = new Jackson2JsonDecoder(mapper);
+      arrayType = MediaType.APPLICATION_JSON;
+      streamType = MediaType.APPLICATION_NDJSON;
+    } else {
+      var mapper = new ObjectMapper(new SmileFactory());
+      encoder = new Jackson2SmileEncoder(mapper);
+      decoder = new Jackson2SmileDecoder(mapper);
+      arrayType = MediaType.parseMediaType("application/x-jackson-smile");
+      streamType = MediaType.parseMediaType("application/stream+x-jackson-smile");
+    }
+    heroList = IntStream.range(0, heroes)
+        .mapToObj(i -> new Hero("00000000-0000-0000-0000-" + String.format("%012d", i),
+            "Sonic", "Sonic", i, 1L))
+        .collect(Collectors.toList());
+    array = encodeToBytes(arrayType);
+    stream = encodeToBytes(streamType);
+    System.out.printf("%n%s, %d heroes: array %d bytes, stream %d bytes%n",
+        format, heroes, array.length, stream.length);
+  }
+
+  @Benchmark
+  public void encodeArray(Blackhole blackhole) {
+    encode(arrayType).doOnNext(buffer -> {
+      blackhole.consume(buffer.readableByteCount());
+      DataBufferUtils.release(buffer);
+    }).blockLast();
+  }
+
+  @Benchmark
+  public void encodeStream(Blackhole blackhole) {
+    encode(streamType).doOnNext(buffer -> {
+      blackhole.consume(buffer.readableByteCount());
+      DataBufferUtils.release(buffer);
+    }).blockLast();
+  }
+
+  @Benchmark
+  public void decodeArray(Blackhole blackhole) {
+    decoder.decode(Mono.just(bufferFactory.wrap(array)), HERO_TYPE, arrayType, null)
+        .doOnNext(blackhole::consume)
+        .blockLast();
+  }
+
+  @Benchmark
+  public void decodeStream(Blackhole blackhole) {
+    decoder.decode(Mono.just(bufferFactory.wrap(stream)), HERO_TYPE, streamType, null)
+        .doOnNext(blackhole::consume)
+        .blockLast();
+  }
+
+  private Flux<DataBuffer> encode(MediaType mediaType) {
+    return encoder.encode(Flux.fromIterable(heroList), bufferFactory, HERO_TYPE, mediaType, null);
+  }
+
+  private byte[] encodeToBytes(MediaType mediaType) {
+    var joined = DataBufferUtils.join(encode(mediaType)).block();
+    var bytes = new byte[joined.readableByteCount()];
+    joined.read(bytes);
+    DataBufferUtils.release(joined);
+    return bytes;
+  }
+}
@@ -0,0 +1,75 @@
+package io.github.adgross.heroes.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+/**
+ * Cost of encoding heroes the way WebFlux does for the single hero, list and items endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HeroJsonBenchmark {
+  private static final ResolvableType HERO_TYPE = ResolvableType.forClass(Hero.class);
+
+  @Param({"1", "100"})
+  public int heroes;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(mapper);
+  private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+  private Hero hero;
+  private List<Hero> heroList;
+
+  @Setup
+  public void setup() {
+    hero = new Hero("00000000-0000-0000-0000-000000000001", "Sonic", "Sonic", 1);
+    heroList = IntStream.range(0, heroes)
+        .mapToObj(i -> new Hero("00000000-0000-0000-0000-" + String.format("%012d", i),
+            "Sonic", "Sonic", i))
+        .collect(Collectors.toList());
+  }
+
+  @Benchmark
+  public byte[] singleHero() throws JsonProcessingException {
+    return mapper.writeValueAsBytes(hero);
+  }
+
+  @Benchmark
+  public void jsonArray(Blackhole blackhole) {
+    encode(MediaType.APPLICATION_JSON, blackhole);
+  }
+
+  @Benchmark
+  public void ndjson(Blackhole blackhole) {
+    encode(MediaType.APPLICATION_NDJSON, blackhole);
+  }
+
+  private void encode(MediaType mediaType, Blackhole blackhole) {
+    encoder.encode(Flux.fromIterable(heroList), bufferFactory, HERO_TYPE, mediaType, null)
+        .doOnNext(buffer -> {
+          blackhole.consume(buffer.readableByteCount());
+          DataBufferUtils.release(buffer);
+        })
+        .blockLast();
+  }
+}
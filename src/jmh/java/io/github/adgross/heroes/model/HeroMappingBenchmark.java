@@ -0,0 +1,52 @@
+package io.github.adgross.heroes.model;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Cost of converting a Hero to and from a DynamoDB item, done for every item read or written,
+ * and of building the schema, done once at startup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HeroMappingBenchmark {
+  @Param({"static", "bean"})
+  public String schemaType;
+
+  private TableSchema<Hero> schema;
+  private Hero hero;
+  private Map<String, AttributeValue> item;
+
+  @Setup
+  public void setup() {
+    schema = createSchema();
+    hero = new Hero("00000000-0000-0000-0000-000000000001", "Sonic", "Sonic", 1);
+    item = schema.itemToMap(hero, false);
+  }
+
+  @Benchmark
+  public Map<String, AttributeValue> itemToMap() {
+    return schema.itemToMap(hero, false);
+  }
+
+  @Benchmark
+  public Hero mapToItem() {
+    return schema.mapToItem(item);
+  }
+
+  @Benchmark
+  public TableSchema<Hero> createSchema() {
+    return HeroTableSchema.create("bean".equals(schemaType));
+  }
+}
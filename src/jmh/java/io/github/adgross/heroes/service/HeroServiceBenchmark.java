@@ -0,0 +1,47 @@
+package io.github.adgross.heroes.service;
+
+import io.github.adgross.heroes.cache.NoOpHeroCache;
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroRequest;
+import io.github.adgross.heroes.repository.HeroGetCoalescer;
+import io.github.adgross.heroes.repository.InMemoryHeroStore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Service layer overhead of create and update, the heroes are kept by the in-memory store.
+ * The store starts empty every iteration, as every create adds a hero.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HeroServiceBenchmark {
+  private static final String ID = "00000000-0000-0000-0000-000000000001";
+
+  private HeroServiceImp heroService;
+  private HeroRequest request;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    heroService = new HeroServiceImp();
+    heroService.heroStore = new InMemoryHeroStore(new NoOpHeroCache(), new HeroGetCoalescer());
+    request = new HeroRequest("Sonic", "Sonic", 1);
+  }
+
+  @Benchmark
+  public Hero create() {
+    return heroService.create(request).block();
+  }
+
+  @Benchmark
+  public Hero update() {
+    return heroService.update(ID, request).block();
+  }
+}
@@ -0,0 +1,56 @@
+package io.github.adgross.heroes.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.adgross.heroes.model.Hero;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Size bounded, TTL evicting cache.
+ * Hit, miss and eviction counters are published as the "heroes" cache metrics.
+ */
+@Component
+@ConditionalOnProperty(name = "dynamodb.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CaffeineHeroCache implements HeroCache, MeterBinder {
+  private final AsyncCache<String, Hero> cache;
+
+  public CaffeineHeroCache(@Value("${dynamodb.cache.maximum-size:10000}") long maximumSize,
+                           @Value("${dynamodb.cache.expire-after-write:60s}") Duration ttl) {
+    cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl)
+        .recordStats()
+        .buildAsync();
+  }
+
+  @Override
+  public Mono<Hero> get(String id, Function<String, Mono<Hero>> loader) {
+    // copy() so a cancelled subscriber doesn't cancel the future shared with other callers,
+    // the load runs in the context of the caller that started it
+    return Mono.deferContextual(context -> Mono.fromFuture(cache.get(id,
+        (key, executor) -> loader.apply(key).contextWrite(context).toFuture()).copy()));
+  }
+
+  @Override
+  public void invalidate(String id) {
+    cache.synchronous().invalidate(id);
+  }
+
+  @Override
+  public void invalidateAll() {
+    cache.synchronous().invalidateAll();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, cache, "heroes");
+  }
+}
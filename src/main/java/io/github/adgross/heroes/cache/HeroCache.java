@@ -0,0 +1,22 @@
+package io.github.adgross.heroes.cache;
+
+import io.github.adgross.heroes.model.Hero;
+import java.util.function.Function;
+import reactor.core.publisher.Mono;
+
+/**
+ * Read-through cache in front of the hero table.
+ * Writes must invalidate the affected ids to keep the cache coherent.
+ */
+public interface HeroCache {
+
+  /**
+   * Return the cached hero, or load it with the given loader on a miss.
+   * An empty loader result is not cached.
+   */
+  Mono<Hero> get(String id, Function<String, Mono<Hero>> loader);
+
+  void invalidate(String id);
+
+  void invalidateAll();
+}
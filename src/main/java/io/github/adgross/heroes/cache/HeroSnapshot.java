@@ -0,0 +1,179 @@
+package io.github.adgross.heroes.cache;
+
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.repository.HeroStore;
+import io.github.adgross.heroes.repository.InMemoryHeroStore;
+import io.github.adgross.heroes.repository.TableBootstrap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-memory copy of the hero table for listing all heroes, replaced by a full scan every
+ * refresh-interval. Writes made through this instance are applied on top of it right away,
+ * writes of other instances show up with the next scan. A snapshot older than max-staleness,
+ * because the scans keep failing, is not used. Not available with the in-memory store.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dynamodb.snapshot.enabled", havingValue = "true")
+@Profile("!" + InMemoryHeroStore.PROFILE)
+public class HeroSnapshot implements DisposableBean {
+  // scans are eventually consistent, a write done just before one may be missing from it
+  private static final long CONSISTENCY_MARGIN = TimeUnit.SECONDS.toNanos(1);
+
+  private final HeroStore heroStore;
+  private final long maxStaleness;
+  private final ConcurrentMap<String, Change> changes = new ConcurrentHashMap<>();
+  private final Disposable refresher;
+  private volatile Snapshot snapshot;
+
+  public HeroSnapshot(HeroStore heroStore,
+                      TableBootstrap tableBootstrap,
+                      @Value("${dynamodb.snapshot.refresh-interval:30s}") Duration refreshInterval,
+                      @Value("${dynamodb.snapshot.max-staleness:2m}") Duration maxStaleness,
+                      ObjectProvider<MeterRegistry> meterRegistry) {
+    this.heroStore = heroStore;
+    this.maxStaleness = maxStaleness.toNanos();
+    // not a MeterBinder, the registry would need this bean before the client it depends on
+    bindTo(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    refresher = tableBootstrap.ready()
+        .thenMany(Flux.interval(Duration.ZERO, refreshInterval))
+        // a scan slower than the interval skips the ticks it overlaps
+        .onBackpressureDrop()
+        .concatMap(tick -> refresh()
+            .onErrorResume(e -> {
+              log.warn("Hero snapshot refresh failed", e);
+              return Mono.empty();
+            }), 1)
+        .subscribe();
+  }
+
+  /**
+   * Whether a snapshot no older than max-staleness is available.
+   */
+  public boolean isFresh() {
+    var current = snapshot;
+    return current != null && System.nanoTime() - current.takenAt <= maxStaleness;
+  }
+
+  /**
+   * All heroes of the snapshot with the local writes applied, in scan order followed by the
+   * heroes created since.
+   */
+  public Flux<Hero> getAll() {
+    return Flux.defer(() -> {
+      var current = snapshot;
+      if (current == null) {
+        return Flux.error(new IllegalStateException("No hero snapshot taken yet"));
+      }
+      if (changes.isEmpty()) {
+        return Flux.fromIterable(current.heroes);
+      }
+      var pending = new HashMap<>(changes);
+      var heroes = new ArrayList<Hero>(current.heroes.size() + pending.size());
+      for (var hero : current.heroes) {
+        var change = pending.remove(hero.getId());
+        if (change == null) {
+          heroes.add(hero);
+        } else if (change.hero != null) {
+          heroes.add(change.hero);
+        }
+      }
+      for (var change : pending.values()) {
+        if (change.hero != null) {
+          heroes.add(change.hero);
+        }
+      }
+      return Flux.fromIterable(heroes);
+    });
+  }
+
+  /**
+   * Apply a written hero, created or replaced.
+   */
+  public void put(Hero hero) {
+    changes.put(hero.getId(), new Change(hero, System.nanoTime()));
+  }
+
+  public void remove(String id) {
+    changes.put(id, new Change(null, System.nanoTime()));
+  }
+
+  /**
+   * Scan the table into a new snapshot, dropping the local writes it already contains.
+   */
+  Mono<Void> refresh() {
+    return Mono.defer(() -> {
+      var started = System.nanoTime();
+      return heroStore.getAll()
+          .collectList()
+          .doOnNext(heroes -> {
+            snapshot = new Snapshot(List.copyOf(heroes), started);
+            changes.values().removeIf(change -> change.madeAt < started - CONSISTENCY_MARGIN);
+          })
+          .then();
+    });
+  }
+
+  private void bindTo(MeterRegistry registry) {
+    Gauge.builder("heroes.snapshot.size", this, HeroSnapshot::size)
+        .description("Heroes in the last snapshot")
+        .register(registry);
+    TimeGauge.builder("heroes.snapshot.age", this, TimeUnit.NANOSECONDS, HeroSnapshot::age)
+        .description("Time since the last snapshot scan started")
+        .register(registry);
+    Gauge.builder("heroes.snapshot.changes", changes, ConcurrentMap::size)
+        .description("Local writes applied on top of the last snapshot")
+        .register(registry);
+  }
+
+  private double size() {
+    var current = snapshot;
+    return current == null ? Double.NaN : current.heroes.size();
+  }
+
+  private double age() {
+    var current = snapshot;
+    return current == null ? Double.NaN : System.nanoTime() - current.takenAt;
+  }
+
+  @Override
+  public void destroy() {
+    refresher.dispose();
+  }
+
+  @AllArgsConstructor
+  private static final class Snapshot {
+    private final List<Hero> heroes;
+    private final long takenAt;
+  }
+
+  /**
+   * A local write, hero is null for a delete.
+   */
+  @AllArgsConstructor
+  private static final class Change {
+    private final Hero hero;
+    private final long madeAt;
+  }
+}
@@ -0,0 +1,28 @@
+package io.github.adgross.heroes.cache;
+
+import io.github.adgross.heroes.model.Hero;
+import java.util.function.Function;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Used when the cache is disabled, every get goes to the loader.
+ */
+@Component
+@ConditionalOnProperty(name = "dynamodb.cache.enabled", havingValue = "false")
+public class NoOpHeroCache implements HeroCache {
+
+  @Override
+  public Mono<Hero> get(String id, Function<String, Mono<Hero>> loader) {
+    return loader.apply(id);
+  }
+
+  @Override
+  public void invalidate(String id) {
+  }
+
+  @Override
+  public void invalidateAll() {
+  }
+}
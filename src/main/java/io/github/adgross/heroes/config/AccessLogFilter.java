@@ -0,0 +1,103 @@
+package io.github.adgross.heroes.config;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Access log with the time each request spent in DynamoDB, in serialization and in the rest of
+ * the handling (controller and service), as one key=value line on the "access" logger.
+ * A sample-rate fraction of the requests is logged, plus every request slower than
+ * slow-threshold, every server error and every request cancelled by the client. The logger is
+ * asynchronous, see logback-spring.xml.
+ */
+@Slf4j(topic = "access")
+@Component
+public class AccessLogFilter implements WebFilter, Ordered {
+  // no response was sent, the status nginx logs for a client that closed the request
+  private static final int CLIENT_CLOSED_REQUEST = 499;
+
+  private final double sampleRate;
+  private final long slowThreshold;
+
+  public AccessLogFilter(@Value("${access-log.sample-rate:0.01}") double sampleRate,
+                         @Value("${access-log.slow-threshold:500ms}") Duration slowThreshold) {
+    this.sampleRate = sampleRate;
+    this.slowThreshold = slowThreshold.toNanos();
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.HIGHEST_PRECEDENCE;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    var timing = new RequestTiming();
+    return chain.filter(exchange)
+        .doOnSuccess(ok -> log(exchange, timing, status(exchange)))
+        .doOnError(e -> log(exchange, timing, status(e)))
+        .doOnCancel(() -> log(exchange, timing, CLIENT_CLOSED_REQUEST))
+        .contextWrite(context -> context.put(RequestTiming.class, timing));
+  }
+
+  private void log(ServerWebExchange exchange, RequestTiming timing, int status) {
+    var total = timing.elapsed();
+    String reason;
+    if (total >= slowThreshold) {
+      reason = "slow";
+    } else if (status >= 500) {
+      reason = "error";
+    } else if (status == CLIENT_CLOSED_REQUEST) {
+      reason = "cancelled";
+    } else if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+      reason = "sampled";
+    } else {
+      return;
+    }
+    var request = exchange.getRequest();
+    var query = request.getURI().getRawQuery();
+    var dynamodb = timing.dynamodb();
+    var serialization = timing.serialization();
+    log.info("request={} method={} path={} status={} total_ms={} handler_ms={} dynamodb_ms={}"
+            + " dynamodb_ops={} serialization_ms={} reason={}",
+        request.getId(), request.getMethodValue(),
+        query == null ? request.getPath().value() : request.getPath().value() + "?" + query,
+        status, millis(total), millis(Math.max(0, total - dynamodb - serialization)),
+        millis(dynamodb), timing.dynamodbOperations(), millis(serialization), reason);
+  }
+
+  private static int status(ServerWebExchange exchange) {
+    var status = exchange.getResponse().getRawStatusCode();
+    return status == null ? HttpStatus.OK.value() : status;
+  }
+
+  /**
+   * Status of the error response, written by the error handler after this filter completes.
+   */
+  private static int status(Throwable e) {
+    if (e instanceof ResponseStatusException) {
+      return ((ResponseStatusException) e).getRawStatusCode();
+    }
+    var annotation = AnnotatedElementUtils.findMergedAnnotation(e.getClass(),
+        ResponseStatus.class);
+    return annotation == null ? HttpStatus.INTERNAL_SERVER_ERROR.value()
+        : annotation.code().value();
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+}
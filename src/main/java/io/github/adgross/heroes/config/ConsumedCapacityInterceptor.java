@@ -0,0 +1,131 @@
+package io.github.adgross.heroes.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Times every DynamoDB call and records the capacity units it consumed.
+ * The enhanced client can't ask for the consumed capacity, so it is added here to each
+ * request that supports it, unless the request already sets it.
+ */
+public class ConsumedCapacityInterceptor implements ExecutionInterceptor {
+  private static final ExecutionAttribute<Long> START =
+      new ExecutionAttribute<>("HeroesRequestStart");
+  private static final Set<String> READS =
+      Set.of("GetItem", "BatchGetItem", "Query", "Scan");
+
+  private final MeterRegistry meterRegistry;
+
+  public ConsumedCapacityInterceptor(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Override
+  public void beforeExecution(Context.BeforeExecution context,
+                              ExecutionAttributes executionAttributes) {
+    executionAttributes.putAttribute(START, System.nanoTime());
+  }
+
+  @Override
+  public SdkRequest modifyRequest(Context.ModifyRequest context,
+                                  ExecutionAttributes executionAttributes) {
+    var request = context.request();
+    var total = ReturnConsumedCapacity.TOTAL;
+    if (request.getValueForField("ReturnConsumedCapacity", String.class).isPresent()) {
+      return request;
+    } else if (request instanceof GetItemRequest) {
+      return ((GetItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    } else if (request instanceof PutItemRequest) {
+      return ((PutItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    } else if (request instanceof UpdateItemRequest) {
+      return ((UpdateItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    } else if (request instanceof DeleteItemRequest) {
+      return ((DeleteItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    } else if (request instanceof QueryRequest) {
+      return ((QueryRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    } else if (request instanceof ScanRequest) {
+      return ((ScanRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    } else if (request instanceof BatchGetItemRequest) {
+      return ((BatchGetItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    } else if (request instanceof BatchWriteItemRequest) {
+      return ((BatchWriteItemRequest) request).toBuilder().returnConsumedCapacity(total).build();
+    }
+    return request;
+  }
+
+  @Override
+  public void afterExecution(Context.AfterExecution context,
+                             ExecutionAttributes executionAttributes) {
+    var operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+    record(operation, "success", executionAttributes);
+    recordCapacity(operation, context.response());
+  }
+
+  @Override
+  public void onExecutionFailure(Context.FailedExecution context,
+                                 ExecutionAttributes executionAttributes) {
+    var operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+    record(operation, "error", executionAttributes);
+  }
+
+  private void record(String operation, String outcome, ExecutionAttributes attributes) {
+    Long start = attributes.getAttribute(START);
+    if (start == null) {
+      return;
+    }
+    Timer.builder("dynamodb.requests")
+        .description("DynamoDB calls, including sdk retries")
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .register(meterRegistry)
+        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  private void recordCapacity(String operation, SdkResponse response) {
+    // a single ConsumedCapacity, or one per table for batch operations
+    response.getValueForField("ConsumedCapacity", Object.class).ifPresent(value -> {
+      if (value instanceof ConsumedCapacity) {
+        recordCapacity(operation, (ConsumedCapacity) value);
+      } else if (value instanceof List) {
+        for (var item : (List<?>) value) {
+          recordCapacity(operation, (ConsumedCapacity) item);
+        }
+      }
+    });
+  }
+
+  private void recordCapacity(String operation, ConsumedCapacity capacity) {
+    if (capacity.capacityUnits() == null) {
+      return;
+    }
+    DistributionSummary.builder("dynamodb.consumed.capacity")
+        .description("Capacity units consumed per DynamoDB call")
+        .baseUnit("capacity_units")
+        .tag("operation", operation)
+        .tag("table", String.valueOf(capacity.tableName()))
+        .tag("capacity", READS.contains(operation) ? "read" : "write")
+        .register(meterRegistry)
+        .record(capacity.capacityUnits());
+  }
+}
@@ -0,0 +1,170 @@
+package io.github.adgross.heroes.config;
+
+import io.github.adgross.heroes.repository.InMemoryHeroStore;
+import io.github.adgross.heroes.repository.ThroughputLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+import software.amazon.awssdk.core.client.config.ClientAsyncConfiguration;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.client.config.SdkAdvancedAsyncClientOption;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.backoff.EqualJitterBackoffStrategy;
+import software.amazon.awssdk.core.retry.backoff.FullJitterBackoffStrategy;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+/**
+ * DynamoDB async client, its Netty http client and retry policy, configured under dynamodb.
+ * Not created with the in-memory store.
+ */
+@Configuration
+@Profile("!" + InMemoryHeroStore.PROFILE)
+@Slf4j
+public class DynamoDbConfig {
+
+  /**
+   * Netty http client used by the DynamoDB client.
+   * With dynamodb.http.share-event-loop the client runs on the Reactor Netty event loop used
+   * by the WebFlux server instead of starting its own threads.
+   */
+  @Bean
+  public SdkAsyncHttpClient dynamoDbHttpClient(
+      @Value("${dynamodb.http.max-concurrency:50}") int maxConcurrency,
+      @Value("${dynamodb.http.max-pending-acquires:10000}") int maxPendingAcquires,
+      @Value("${dynamodb.http.acquire-timeout:10s}") Duration acquireTimeout,
+      @Value("${dynamodb.http.connection-timeout:2s}") Duration connectionTimeout,
+      @Value("${dynamodb.http.read-timeout:30s}") Duration readTimeout,
+      @Value("${dynamodb.http.write-timeout:30s}") Duration writeTimeout,
+      @Value("${dynamodb.http.max-idle-time:60s}") Duration maxIdleTime,
+      @Value("${dynamodb.http.time-to-live:0s}") Duration timeToLive,
+      @Value("${dynamodb.http.share-event-loop:false}") boolean shareEventLoop,
+      @Value("${dynamodb.http.event-loop-threads:0}") int eventLoopThreads,
+      ObjectProvider<ReactorResourceFactory> reactorResourceFactory) {
+    var builder = NettyNioAsyncHttpClient.builder()
+        .maxConcurrency(maxConcurrency)
+        .maxPendingConnectionAcquires(maxPendingAcquires)
+        .connectionAcquisitionTimeout(acquireTimeout)
+        .connectionTimeout(connectionTimeout)
+        .readTimeout(readTimeout)
+        .writeTimeout(writeTimeout)
+        .connectionMaxIdleTime(maxIdleTime)
+        .connectionTimeToLive(timeToLive);
+    if (shareEventLoop) {
+      // the server's loop resources, or the global ones when running without a server
+      ReactorResourceFactory resourceFactory = reactorResourceFactory.getIfAvailable();
+      LoopResources loops = resourceFactory != null
+          ? resourceFactory.getLoopResources()
+          : HttpResources.get();
+      // not owned by the sdk, closing the client leaves the event loop running
+      builder.eventLoopGroup(SdkEventLoopGroup.create(loops.onServer(true)));
+      log.info("DynamoDB client shares the Reactor Netty event loop");
+    } else if (eventLoopThreads > 0) {
+      builder.eventLoopGroupBuilder(SdkEventLoopGroup.builder().numberOfThreads(eventLoopThreads));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Retry policy of the DynamoDB client, throttling errors back off with their own base delay.
+   * Every throttled attempt is reported to the limiter, so it slows down before the retries
+   * run out.
+   */
+  @Bean
+  public RetryPolicy dynamoDbRetryPolicy(
+      @Value("${dynamodb.retry.max-retries:8}") int maxRetries,
+      @Value("${dynamodb.retry.base-delay:25ms}") Duration baseDelay,
+      @Value("${dynamodb.retry.throttling-base-delay:500ms}") Duration throttlingBaseDelay,
+      @Value("${dynamodb.retry.max-backoff:20s}") Duration maxBackoff,
+      ThroughputLimiter throughputLimiter) {
+    var defaultCondition = RetryCondition.defaultRetryCondition();
+    return RetryPolicy.builder()
+        .numRetries(maxRetries)
+        .retryCondition(context -> {
+          if (context.exception() != null && ThroughputLimiter.isThrottling(context.exception())) {
+            throughputLimiter.throttled(context.executionAttributes()
+                .getAttribute(SdkExecutionAttribute.OPERATION_NAME));
+          }
+          return defaultCondition.shouldRetry(context);
+        })
+        .backoffStrategy(FullJitterBackoffStrategy.builder()
+            .baseDelay(baseDelay)
+            .maxBackoffTime(maxBackoff)
+            .build())
+        .throttlingBackoffStrategy(EqualJitterBackoffStrategy.builder()
+            .baseDelay(throttlingBaseDelay)
+            .maxBackoffTime(maxBackoff)
+            .build())
+        .build();
+  }
+
+  @Bean
+  public ConsumedCapacityInterceptor consumedCapacityInterceptor(
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    return new ConsumedCapacityInterceptor(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+  }
+
+  /**
+   * DynamoDB async client.
+   * dynamodb.future-completion-executor picks the threads completing the client futures:
+   * sdk (the sdk's own thread pool), direct (the Netty thread that got the response)
+   * or parallel (the Reactor parallel scheduler).
+   */
+  @Bean
+  public DynamoDbAsyncClient dynamoDbAsyncClient(
+      @Value("${dynamodb.region}") String region,
+      @Value("${dynamodb.endpoint}") String endpoint,
+      @Value("${dynamodb.future-completion-executor:sdk}") String futureCompletionExecutor,
+      SdkAsyncHttpClient dynamoDbHttpClient,
+      RetryPolicy dynamoDbRetryPolicy,
+      ConsumedCapacityInterceptor consumedCapacityInterceptor) {
+    var asyncConfiguration = ClientAsyncConfiguration.builder();
+    Executor executor = completionExecutor(futureCompletionExecutor);
+    if (executor != null) {
+      asyncConfiguration.advancedOption(
+          SdkAdvancedAsyncClientOption.FUTURE_COMPLETION_EXECUTOR, executor);
+    }
+    return DynamoDbAsyncClient.builder()
+        .region(Region.of(region))
+        .endpointOverride(URI.create(endpoint))
+        .httpClient(dynamoDbHttpClient)
+        .overrideConfiguration(ClientOverrideConfiguration.builder()
+            .retryPolicy(dynamoDbRetryPolicy)
+            .addExecutionInterceptor(consumedCapacityInterceptor)
+            .build())
+        .asyncConfiguration(asyncConfiguration.build())
+        .build();
+  }
+
+  private static Executor completionExecutor(String name) {
+    switch (name) {
+      case "sdk":
+        return null;
+      case "direct":
+        return Runnable::run;
+      case "parallel":
+        return Schedulers.parallel()::schedule;
+      default:
+        throw new IllegalArgumentException(
+            "Unknown dynamodb.future-completion-executor " + name
+                + ", expected sdk, direct or parallel");
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package io.github.adgross.heroes.config;
+
+import java.util.function.Function;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Adds the time Jackson spends encoding response bodies to the RequestTiming of the request.
+ * Jackson encodes synchronously when a value arrives, or when a list completes, so the time from
+ * that input signal to the buffer it produces is the encoding alone.
+ */
+final class EncodingTimer {
+
+  private EncodingTimer() {
+  }
+
+  /**
+   * Run the encoder on the input, timing each buffer it produces.
+   */
+  static Flux<DataBuffer> timed(Publisher<?> inputStream,
+                                Function<Publisher<?>, Flux<DataBuffer>> encoder) {
+    return Flux.deferContextual(context -> {
+      var timing = RequestTiming.of(context);
+      if (timing.isEmpty()) {
+        return encoder.apply(inputStream);
+      }
+      var signaled = new long[1];
+      // a Mono is encoded as a single value, it must stay a Mono
+      Publisher<?> input = inputStream instanceof Mono
+          ? Mono.from(inputStream).doOnEach(signal -> signaled[0] = System.nanoTime())
+          : Flux.from(inputStream).doOnEach(signal -> signaled[0] = System.nanoTime());
+      return encoder.apply(input)
+          .doOnNext(buffer -> timing.get().addSerialization(System.nanoTime() - signaled[0]));
+    });
+  }
+}
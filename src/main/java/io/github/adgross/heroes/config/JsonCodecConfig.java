@@ -0,0 +1,40 @@
+package io.github.adgross.heroes.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+/**
+ * The JSON encoder Boot configures, timed for the access log.
+ */
+@Configuration
+public class JsonCodecConfig {
+
+  /**
+   * Ordered after the Jackson customizer of Boot, which sets its own JSON encoder.
+   */
+  @Bean
+  @Order(1)
+  public CodecCustomizer timedJsonEncoderCustomizer(ObjectMapper objectMapper) {
+    return configurer -> configurer.defaultCodecs().jackson2JsonEncoder(
+        new Jackson2JsonEncoder(objectMapper) {
+          @Override
+          public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                         ResolvableType elementType, MimeType mimeType,
+                                         Map<String, Object> hints) {
+            return EncodingTimer.timed(inputStream,
+                input -> super.encode(input, bufferFactory, elementType, mimeType, hints));
+          }
+        });
+  }
+}
@@ -0,0 +1,52 @@
+package io.github.adgross.heroes.config;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import reactor.util.context.ContextView;
+
+/**
+ * Where the time of a request went, carried in the Reactor context of the request and logged by
+ * the AccessLogFilter. Work running concurrently for the same request, like the segments of a
+ * parallel scan, is summed.
+ */
+public final class RequestTiming {
+  private final long start = System.nanoTime();
+  private final LongAdder dynamodb = new LongAdder();
+  private final LongAdder dynamodbOperations = new LongAdder();
+  private final LongAdder serialization = new LongAdder();
+
+  /**
+   * The timing of the request the context belongs to, empty outside of a request.
+   */
+  public static Optional<RequestTiming> of(ContextView context) {
+    return context.getOrEmpty(RequestTiming.class);
+  }
+
+  /**
+   * Count a DynamoDB operation, with its retries, that took the given time.
+   */
+  public void addDynamodb(long nanos) {
+    dynamodb.add(nanos);
+    dynamodbOperations.increment();
+  }
+
+  public void addSerialization(long nanos) {
+    serialization.add(nanos);
+  }
+
+  public long elapsed() {
+    return System.nanoTime() - start;
+  }
+
+  public long dynamodb() {
+    return dynamodb.sum();
+  }
+
+  public long dynamodbOperations() {
+    return dynamodbOperations.sum();
+  }
+
+  public long serialization() {
+    return serialization.sum();
+  }
+}
@@ -0,0 +1,56 @@
+package io.github.adgross.heroes.config;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.util.Map;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import reactor.core.publisher.Flux;
+
+/**
+ * Smile, the binary form of JSON, for clients sending Accept: application/x-jackson-smile.
+ * Lists are a Smile array, application/stream+x-jackson-smile streams one hero at a time
+ * like NDJSON. The default Smile codecs are replaced to use the same Jackson settings as JSON.
+ */
+@Configuration
+public class SmileCodecConfig implements WebFluxConfigurer {
+  public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+  public static final String APPLICATION_STREAM_SMILE_VALUE = "application/stream+x-jackson-smile";
+
+  private final Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+  public SmileCodecConfig(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+    this.objectMapperBuilder = objectMapperBuilder;
+  }
+
+  @Override
+  public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+    var smileMapper = objectMapperBuilder.factory(new SmileFactory()).build();
+    // without mime types the codecs would take the json ones
+    var mimeTypes = new MimeType[] {
+        MimeType.valueOf(APPLICATION_SMILE_VALUE),
+        MimeType.valueOf("application/*+x-jackson-smile")
+    };
+    configurer.defaultCodecs().jackson2SmileEncoder(
+        new Jackson2SmileEncoder(smileMapper, mimeTypes) {
+          @Override
+          public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                         ResolvableType elementType, MimeType mimeType,
+                                         Map<String, Object> hints) {
+            // timed for the access log
+            return EncodingTimer.timed(inputStream,
+                input -> super.encode(input, bufferFactory, elementType, mimeType, hints));
+          }
+        });
+    configurer.defaultCodecs().jackson2SmileDecoder(
+        new Jackson2SmileDecoder(smileMapper, mimeTypes));
+  }
+}
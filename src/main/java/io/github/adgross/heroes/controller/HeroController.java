@@ -1,64 +1,165 @@
 package io.github.adgross.heroes.controller;
 
+import io.github.adgross.heroes.config.SmileCodecConfig;
 import io.github.adgross.heroes.exception.HeroNotFoundException;
+import io.github.adgross.heroes.exception.ThroughputExceededException;
 import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroBatchResult;
+import io.github.adgross.heroes.model.HeroBulkRequest;
+import io.github.adgross.heroes.model.HeroImportSummary;
+import io.github.adgross.heroes.model.HeroPage;
+import io.github.adgross.heroes.model.HeroPatchRequest;
 import io.github.adgross.heroes.model.HeroRequest;
+import io.github.adgross.heroes.model.UniverseStats;
 import io.github.adgross.heroes.service.HeroService;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import javax.validation.Valid;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-@Slf4j
 @RestController
 @RequestMapping("/api/v1/heroes")
 public class HeroController {
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int MAX_BATCH_SIZE = 1000;
 
   @Autowired
   HeroService heroService;
 
+  /**
+   * List all heroes, or only the heroes of the given universe sorted by name.
+   * With fields, only the listed hero fields are read and returned.
+   */
   @GetMapping
   @ResponseStatus(HttpStatus.OK)
-  public Flux<Hero> getAllItems() {
-    log.info("Requesting the list of all heroes");
-    return heroService.listHeroes();
+  public Flux<Hero> getAllItems(@RequestParam(required = false) String universe,
+                                @RequestParam(required = false) List<String> fields) {
+    return list(universe, fields);
+  }
+
+  @GetMapping(value = "/items", produces = {MediaType.APPLICATION_NDJSON_VALUE,
+      SmileCodecConfig.APPLICATION_STREAM_SMILE_VALUE})
+  @ResponseStatus(HttpStatus.OK)
+  public Flux<Hero> items(@RequestParam(required = false) String universe,
+                          @RequestParam(required = false) List<String> fields) {
+    return list(universe, fields);
+  }
+
+  /**
+   * Return one page of heroes, pass the returned next cursor to get the following page.
+   */
+  @GetMapping("/page")
+  @ResponseStatus(HttpStatus.OK)
+  public Mono<HeroPage> page(@RequestParam(defaultValue = "100") int limit,
+                             @RequestParam(required = false) String cursor) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "limit must be between 1 and " + MAX_PAGE_SIZE));
+    }
+    return heroService.listHeroes(limit, cursor);
+  }
+
+  /**
+   * Number of heroes and films per universe, read from precomputed counters.
+   */
+  @GetMapping("/stats")
+  @ResponseStatus(HttpStatus.OK)
+  public Flux<UniverseStats> stats() {
+    return heroService.stats();
   }
 
-  @GetMapping(value = "/items", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  @GetMapping("/stats/{universe}")
   @ResponseStatus(HttpStatus.OK)
-  public Flux<Hero> items() {
-    log.info("Requesting list stream of all heroes");
-    return heroService.listHeroes();
+  public Mono<UniverseStats> stats(@PathVariable String universe) {
+    return heroService.stats(universe);
   }
 
+  /**
+   * Find a hero, its version is sent as ETag when returned.
+   * A request with the current ETag in If-None-Match gets a 304 without body.
+   */
   @GetMapping("/{uuid}")
+  public Mono<ResponseEntity<Hero>> findById(@PathVariable @Valid UUID uuid,
+                                             @RequestParam(required = false) List<String> fields) {
+    if (fields != null && !Hero.ATTRIBUTES.containsAll(fields)) {
+      return Mono.error(invalidFields(fields));
+    }
+    var hero = fields == null
+        ? heroService.findById(uuid.toString())
+        : heroService.findById(uuid.toString(), fields);
+    return hero.switchIfEmpty(Mono.error(new HeroNotFoundException(uuid.toString())))
+        .map(HeroController::withEtag);
+  }
+
+  /**
+   * Find many heroes at once, ids not found are reported in the missing list.
+   */
+  @PostMapping("/batch-get")
   @ResponseStatus(HttpStatus.OK)
-  public Mono<Hero> findById(@PathVariable @Valid UUID uuid) {
-    log.info("Requesting the hero with id {}", uuid);
-    return heroService.findById(uuid.toString())
-        .switchIfEmpty(Mono.error(new HeroNotFoundException(uuid.toString())));
+  public Mono<HeroBatchResult> findByIds(@RequestBody List<UUID> uuids) {
+    if (uuids.isEmpty() || uuids.size() > MAX_BATCH_SIZE) {
+      return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "between 1 and " + MAX_BATCH_SIZE + " ids must be requested"));
+    }
+    var ids = uuids.stream().map(UUID::toString).collect(Collectors.toList());
+    return heroService.findByIds(ids);
   }
 
   @PostMapping
   @ResponseStatus(HttpStatus.CREATED)
   public Mono<Hero> create(@RequestBody @Valid HeroRequest hero) {
-    log.info("Creating a new hero");
     return heroService.create(hero);
   }
 
+  /**
+   * Create many heroes with random ids using batch writes.
+   * On failure some of the heroes may have been created.
+   */
+  @PostMapping("/bulk")
+  @ResponseStatus(HttpStatus.CREATED)
+  public Flux<Hero> createAll(@RequestBody @Valid HeroBulkRequest request) {
+    return heroService.createAll(request.getHeroes());
+  }
+
+  /**
+   * Import heroes from a NDJSON body, one hero per line, created with random ids.
+   * Streams the result of each line, or a single summary line when summary is set.
+   * A line that isn't valid JSON ends the import.
+   */
+  @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE,
+      produces = {MediaType.APPLICATION_NDJSON_VALUE,
+          SmileCodecConfig.APPLICATION_STREAM_SMILE_VALUE})
+  @ResponseStatus(HttpStatus.OK)
+  public Flux<?> importAll(@RequestBody Flux<HeroRequest> heroes,
+                           @RequestParam(defaultValue = "false") boolean summary) {
+    var results = heroService.importAll(heroes);
+    if (!summary) {
+      return results;
+    }
+    return results.collect(HeroImportSummary::new, HeroImportSummary::add).flux();
+  }
+
   /**
    * Create the Hero with given ID, overwrite if already exists.
    */
@@ -66,24 +167,135 @@ public class HeroController {
   @ResponseStatus(HttpStatus.CREATED)
   public Mono<Hero> forceCreate(@PathVariable @Valid UUID uuid,
                                 @RequestBody @Valid HeroRequest hero) {
-    log.info("Creating hero with id {}", uuid);
     return heroService.forceCreate(uuid.toString(), hero);
   }
 
+  /**
+   * Replace the hero. With If-Match it is only replaced if its ETag still matches, or if it
+   * exists for If-Match: *, otherwise the response is a 412.
+   */
   @PutMapping("/{uuid}")
-  @ResponseStatus(HttpStatus.OK)
-  public Mono<Hero> update(@PathVariable @Valid UUID uuid, @RequestBody @Valid HeroRequest hero) {
-    log.info("Updating the hero with id {}", uuid);
-    return heroService.update(uuid.toString(), hero)
-        .switchIfEmpty(Mono.error(new HeroNotFoundException(uuid.toString())));
+  public Mono<ResponseEntity<Hero>> update(
+      @PathVariable @Valid UUID uuid,
+      @RequestBody @Valid HeroRequest hero,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    Mono<Hero> updated;
+    if (ifMatch == null) {
+      updated = heroService.update(uuid.toString(), hero);
+    } else if (matchesAny(ifMatch)) {
+      updated = heroService.updateExisting(uuid.toString(), hero)
+          .onErrorMap(HeroNotFoundException.class, HeroController::noCurrentHero);
+    } else {
+      var version = versionOf(ifMatch);
+      if (version == null) {
+        return Mono.error(invalidIfMatch());
+      }
+      updated = heroService.update(uuid.toString(), hero, version);
+    }
+    return updated.switchIfEmpty(Mono.error(new HeroNotFoundException(uuid.toString())))
+        .map(HeroController::withEtag);
+  }
+
+  /**
+   * Change only the attributes in the body, filmsIncrement is added to the stored films.
+   * Supports If-Match like PUT.
+   */
+  @PatchMapping("/{uuid}")
+  public Mono<ResponseEntity<Hero>> patch(
+      @PathVariable @Valid UUID uuid,
+      @RequestBody @Valid HeroPatchRequest patch,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+    if (ifMatch != null && matchesAny(ifMatch)) {
+      // a patch already requires the hero to exist, only the status differs
+      return heroService.patch(uuid.toString(), patch, null)
+          .onErrorMap(HeroNotFoundException.class, HeroController::noCurrentHero)
+          .map(HeroController::withEtag);
+    }
+    Long version = null;
+    if (ifMatch != null) {
+      version = versionOf(ifMatch);
+      if (version == null) {
+        return Mono.error(invalidIfMatch());
+      }
+    }
+    return heroService.patch(uuid.toString(), patch, version)
+        .map(HeroController::withEtag);
   }
 
   @DeleteMapping("/{uuid}")
   @ResponseStatus(HttpStatus.NO_CONTENT)
   public Mono<Hero> deleteById(@PathVariable @Valid UUID uuid) {
-    log.info("Deleting the hero with id {}", uuid);
     return heroService.deleteById(uuid.toString())
         .switchIfEmpty(Mono.error(new HeroNotFoundException(uuid.toString())));
   }
 
+  /**
+   * Requests over the DynamoDB throughput fail right away with a 429, Retry-After tells
+   * the client when to try again.
+   */
+  @ExceptionHandler
+  public ResponseEntity<Void> throughputExceeded(ThroughputExceededException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+        .build();
+  }
+
+  private Flux<Hero> list(String universe, List<String> fields) {
+    if (fields == null) {
+      return universe == null
+          ? heroService.listHeroes()
+          : heroService.listHeroesByUniverse(universe);
+    }
+    if (!Hero.ATTRIBUTES.containsAll(fields)) {
+      return Flux.error(invalidFields(fields));
+    }
+    return universe == null
+        ? heroService.listHeroes(fields)
+        : heroService.listHeroesByUniverse(universe, fields);
+  }
+
+  private static ResponseEntity<Hero> withEtag(Hero hero) {
+    var response = ResponseEntity.ok();
+    if (hero.getVersion() != null) {
+      response.eTag(hero.getVersion().toString());
+    }
+    return response.body(hero);
+  }
+
+  /**
+   * If-Match: *, matching any current hero.
+   */
+  private static boolean matchesAny(String ifMatch) {
+    return ifMatch.trim().equals("*");
+  }
+
+  /**
+   * The version of an ETag, null if it isn't a single strong ETag of a hero.
+   */
+  private static Long versionOf(String etag) {
+    var value = etag.trim();
+    if (value.length() < 3 || !value.startsWith("\"") || !value.endsWith("\"")) {
+      return null;
+    }
+    try {
+      return Long.valueOf(value.substring(1, value.length() - 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static ResponseStatusException invalidIfMatch() {
+    return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+        "If-Match must be the ETag of the hero");
+  }
+
+  private static ResponseStatusException noCurrentHero(HeroNotFoundException e) {
+    return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, e.getMessage());
+  }
+
+  private static ResponseStatusException invalidFields(List<String> fields) {
+    return new ResponseStatusException(HttpStatus.BAD_REQUEST,
+        "Invalid fields " + fields + ", valid fields are " + Hero.ATTRIBUTES);
+  }
+
 }
@@ -0,0 +1,25 @@
+package io.github.adgross.heroes.exception;
+
+import java.time.Duration;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The request was shed, or throttled by DynamoDB, to keep within the table throughput.
+ */
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class ThroughputExceededException extends Exception {
+  private final Duration retryAfter;
+
+  public ThroughputExceededException(Duration retryAfter) {
+    super("Too many requests, try again later");
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * Whole seconds to wait before retrying, at least one.
+   */
+  public long getRetryAfterSeconds() {
+    return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+  }
+}
@@ -0,0 +1,15 @@
+package io.github.adgross.heroes.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * DynamoDB kept returning unprocessed items for a batch after all retries.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class UnprocessedItemsException extends Exception {
+
+  public UnprocessedItemsException(int count) {
+    super(String.format("%d items still unprocessed after retries, try again later", count));
+  }
+}
@@ -0,0 +1,12 @@
+package io.github.adgross.heroes.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class VersionMismatchException extends Exception {
+
+  public VersionMismatchException(String id, Long version) {
+    super(String.format("Hero %s is not at version %s", id, version));
+  }
+}
@@ -0,0 +1,12 @@
+package io.github.adgross.heroes.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class WriteQueueFullException extends Exception {
+
+  public WriteQueueFullException() {
+    super("Too many pending writes, try again later");
+  }
+}
@@ -1,23 +1,72 @@
 package io.github.adgross.heroes.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+import java.util.Set;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.annotations.DynamoDbVersionAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 @DynamoDbBean
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class Hero {
+  public static final String UNIVERSE_INDEX = "universe-index";
+  public static final Set<String> ATTRIBUTES = Set.of("id", "name", "universe", "films", "version");
+
+  // attributes left out of a projected read are null and omitted from the json
   private String id;
   private String name;
   private String universe;
-  private int films;
+  private Integer films;
+  // incremented on every write, not part of the hero equality
+  @EqualsAndHashCode.Exclude
+  private Long version;
+
+  public Hero(String id, String name, String universe, Integer films) {
+    this(id, name, universe, films, null);
+  }
 
   @DynamoDbPartitionKey
   public String getId() {
     return id;
   }
-}
\ No newline at end of file
+
+  @DynamoDbSecondarySortKey(indexNames = UNIVERSE_INDEX)
+  public String getName() {
+    return name;
+  }
+
+  @DynamoDbSecondaryPartitionKey(indexNames = UNIVERSE_INDEX)
+  public String getUniverse() {
+    return universe;
+  }
+
+  @DynamoDbVersionAttribute
+  public Long getVersion() {
+    return version;
+  }
+
+  /**
+   * A copy with only the given attributes, or this hero if empty.
+   */
+  public Hero project(List<String> attributes) {
+    if (attributes.isEmpty()) {
+      return this;
+    }
+    return new Hero(
+        attributes.contains("id") ? id : null,
+        attributes.contains("name") ? name : null,
+        attributes.contains("universe") ? universe : null,
+        attributes.contains("films") ? films : null,
+        attributes.contains("version") ? version : null);
+  }
+}
@@ -0,0 +1,14 @@
+package io.github.adgross.heroes.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeroBatchResult {
+  private List<Hero> heroes;
+  private List<String> missing;
+}
@@ -0,0 +1,19 @@
+package io.github.adgross.heroes.model;
+
+import java.util.List;
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeroBulkRequest {
+
+  @NotEmpty
+  @Size(max = 10000)
+  private List<@Valid HeroRequest> heroes;
+}
@@ -0,0 +1,19 @@
+package io.github.adgross.heroes.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of one line of an import, id of the created hero or the reason it failed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class HeroImportResult {
+  private long line;
+  private String id;
+  private String error;
+}
@@ -0,0 +1,21 @@
+package io.github.adgross.heroes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeroImportSummary {
+  private long created;
+  private long failed;
+
+  public void add(HeroImportResult result) {
+    if (result.getError() == null) {
+      created++;
+    } else {
+      failed++;
+    }
+  }
+}
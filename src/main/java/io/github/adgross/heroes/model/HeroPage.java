@@ -0,0 +1,17 @@
+package io.github.adgross.heroes.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One page of heroes, next is the cursor for the following page or null on the last page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeroPage {
+  private List<Hero> items;
+  private String next;
+}
@@ -0,0 +1,48 @@
+package io.github.adgross.heroes.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import javax.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Partial hero update, attributes left null are not changed.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HeroPatchRequest {
+  private static final String NOT_BLANK = "(?s).*\\S.*";
+
+  @Pattern(regexp = NOT_BLANK, message = "must not be blank")
+  @Size(min = 2, max = 256)
+  private String name;
+
+  @Pattern(regexp = NOT_BLANK, message = "must not be blank")
+  @Size(min = 2, max = 128)
+  private String universe;
+
+  @PositiveOrZero
+  private Integer films;
+
+  // atomically added to the stored films
+  @Positive
+  private Integer filmsIncrement;
+
+  @JsonIgnore
+  @AssertTrue(message = "films and filmsIncrement can't be used together")
+  public boolean isFilmsOrIncrement() {
+    return films == null || filmsIncrement == null;
+  }
+
+  @JsonIgnore
+  @AssertTrue(message = "must change at least one attribute")
+  public boolean isChanging() {
+    return name != null || universe != null || films != null || filmsIncrement != null;
+  }
+}
@@ -0,0 +1,53 @@
+package io.github.adgross.heroes.model;
+
+import static software.amazon.awssdk.enhanced.dynamodb.extensions.VersionedRecordExtension.AttributeTags.versionAttribute;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.primaryPartitionKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.secondaryPartitionKey;
+import static software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags.secondarySortKey;
+
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+/**
+ * DynamoDB table schemas for Hero.
+ * The static schema is declared by hand and needs no bean introspection, keep it in sync with
+ * the annotations on Hero, which are still used by the bean schema.
+ */
+public final class HeroTableSchema {
+
+  private HeroTableSchema() {
+  }
+
+  public static TableSchema<Hero> create(boolean bean) {
+    return bean ? beanSchema() : staticSchema();
+  }
+
+  public static TableSchema<Hero> staticSchema() {
+    return StaticTableSchema.builder(Hero.class)
+        .newItemSupplier(Hero::new)
+        .addAttribute(String.class, a -> a.name("id")
+            .getter(Hero::getId)
+            .setter(Hero::setId)
+            .tags(primaryPartitionKey()))
+        .addAttribute(String.class, a -> a.name("name")
+            .getter(Hero::getName)
+            .setter(Hero::setName)
+            .tags(secondarySortKey(Hero.UNIVERSE_INDEX)))
+        .addAttribute(String.class, a -> a.name("universe")
+            .getter(Hero::getUniverse)
+            .setter(Hero::setUniverse)
+            .tags(secondaryPartitionKey(Hero.UNIVERSE_INDEX)))
+        .addAttribute(Integer.class, a -> a.name("films")
+            .getter(Hero::getFilms)
+            .setter(Hero::setFilms))
+        .addAttribute(Long.class, a -> a.name("version")
+            .getter(Hero::getVersion)
+            .setter(Hero::setVersion)
+            .tags(versionAttribute()))
+        .build();
+  }
+
+  public static TableSchema<Hero> beanSchema() {
+    return TableSchema.fromBean(Hero.class);
+  }
+}
@@ -0,0 +1,14 @@
+package io.github.adgross.heroes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UniverseStats {
+  private String universe;
+  private long heroes;
+  private long films;
+}
@@ -0,0 +1,85 @@
+package io.github.adgross.heroes.repository;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket whose rate follows throttling, additive increase and multiplicative decrease.
+ * A throttle cuts the rate by the decrease factor, at most once per second so requests throttled
+ * together count once. Every second without throttling adds the increase rate back, up to the
+ * max rate. The bucket holds at most one second of tokens.
+ */
+class AdaptiveTokenBucket {
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final double maxRate;
+  private final double minRate;
+  private final double decreaseFactor;
+  private final double increaseRate;
+  private final LongSupplier nanoClock;
+  private double rate;
+  private double tokens;
+  private long refilledAt;
+  private long throttledAt;
+  private long decreasedAt;
+
+  AdaptiveTokenBucket(double maxRate, double minRate, double decreaseFactor,
+                      double increaseRate, LongSupplier nanoClock) {
+    this.maxRate = maxRate;
+    this.minRate = Math.min(minRate, maxRate);
+    this.decreaseFactor = decreaseFactor;
+    this.increaseRate = increaseRate;
+    this.nanoClock = nanoClock;
+    rate = maxRate;
+    tokens = maxRate;
+    refilledAt = nanoClock.getAsLong();
+    throttledAt = refilledAt - SECOND;
+    decreasedAt = throttledAt;
+  }
+
+  synchronized boolean tryAcquire() {
+    refill();
+    if (tokens < 1) {
+      return false;
+    }
+    tokens -= 1;
+    return true;
+  }
+
+  synchronized void throttled() {
+    refill();
+    throttledAt = refilledAt;
+    if (refilledAt - decreasedAt >= SECOND) {
+      decreasedAt = refilledAt;
+      rate = Math.max(minRate, rate * decreaseFactor);
+      tokens = Math.min(tokens, rate);
+    }
+  }
+
+  /**
+   * Time until the next token is available, zero if there is one.
+   */
+  synchronized Duration retryAfter() {
+    refill();
+    if (tokens >= 1) {
+      return Duration.ZERO;
+    }
+    return Duration.ofNanos((long) Math.ceil((1 - tokens) / rate * SECOND));
+  }
+
+  synchronized double rate() {
+    refill();
+    return rate;
+  }
+
+  private void refill() {
+    long now = nanoClock.getAsLong();
+    double elapsed = (double) (now - refilledAt) / SECOND;
+    refilledAt = now;
+    if (now - throttledAt >= SECOND) {
+      rate = Math.min(maxRate, rate + increaseRate * elapsed);
+    }
+    tokens = Math.min(rate, tokens + rate * elapsed);
+  }
+}
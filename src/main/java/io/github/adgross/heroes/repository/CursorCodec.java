@@ -0,0 +1,62 @@
+package io.github.adgross.heroes.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Converts a LastEvaluatedKey to an opaque url-safe cursor and back.
+ * Only string and number key attributes are supported, which covers every key we use. Cursors
+ * come from clients, so decoding only accepts the key of the table they page.
+ */
+final class CursorCodec {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final TypeReference<Map<String, Map<String, String>>> TYPE =
+      new TypeReference<>() {};
+
+  private CursorCodec() {
+  }
+
+  static String encode(Map<String, AttributeValue> key) {
+    if (key == null || key.isEmpty()) {
+      return null;
+    }
+    Map<String, Map<String, String>> plain = new HashMap<>();
+    key.forEach((name, value) -> plain.put(name, value.n() != null
+        ? Map.of("N", value.n())
+        : Map.of("S", value.s())));
+    try {
+      return Base64.getUrlEncoder().withoutPadding()
+          .encodeToString(MAPPER.writeValueAsBytes(plain));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Decode a cursor created by {@link #encode(Map)} from the key of a table with a string
+   * partition key and no sort key.
+   *
+   * @param keyName the partition key attribute
+   * @throws IllegalArgumentException if the cursor is malformed or isn't such a key, DynamoDB
+   *     would reject it as an exclusive start key
+   */
+  static Map<String, AttributeValue> decode(String cursor, String keyName) {
+    Map<String, Map<String, String>> plain;
+    try {
+      plain = MAPPER.readValue(Base64.getUrlDecoder().decode(cursor), TYPE);
+    } catch (Exception e) {
+      throw new IllegalArgumentException(e);
+    }
+    var value = plain == null || plain.size() != 1 ? null : plain.get(keyName);
+    if (value == null || value.size() != 1 || value.get("S") == null
+        || value.get("S").isEmpty()) {
+      throw new IllegalArgumentException("Not a key of " + keyName);
+    }
+    return Map.of(keyName, AttributeValue.builder().s(value.get("S")).build());
+  }
+}
@@ -0,0 +1,66 @@
+package io.github.adgross.heroes.repository;
+
+import io.github.adgross.heroes.model.Hero;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Single-flight for hero lookups: concurrent gets for the same id share one in-flight load.
+ * The shared load is dropped as soon as it completes, nothing is cached.
+ * Writes must invalidate the affected ids, a load started before the write is not joined after.
+ */
+@Component
+public class HeroGetCoalescer implements MeterBinder {
+  private final ConcurrentMap<String, CompletableFuture<Hero>> inFlight =
+      new ConcurrentHashMap<>();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder collapsed = new LongAdder();
+
+  public Mono<Hero> get(String id, Function<String, Mono<Hero>> loader) {
+    return Mono.deferContextual(context -> {
+      var future = new CompletableFuture<Hero>();
+      var shared = inFlight.putIfAbsent(id, future);
+      if (shared != null) {
+        collapsed.increment();
+        return Mono.fromFuture(shared.copy());
+      }
+      loads.increment();
+      // not tied to the first caller, cancelling it must not fail the others, but runs in its
+      // context
+      loader.apply(id)
+          .contextWrite(context)
+          .doFinally(signal -> inFlight.remove(id, future))
+          .subscribe(future::complete, future::completeExceptionally, () -> future.complete(null));
+      return Mono.fromFuture(future.copy());
+    });
+  }
+
+  /**
+   * Later gets start a new load, callers already waiting keep the in-flight one.
+   */
+  public void invalidate(String id) {
+    inFlight.remove(id);
+  }
+
+  public void invalidateAll() {
+    inFlight.clear();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("heroes.get.loads", loads, LongAdder::sum)
+        .description("Hero lookups sent to the repository")
+        .register(registry);
+    FunctionCounter.builder("heroes.get.coalesced", collapsed, LongAdder::sum)
+        .description("Hero lookups served by an already in-flight lookup")
+        .register(registry);
+  }
+}
@@ -1,88 +1,733 @@
 package io.github.adgross.heroes.repository;
 
+import io.github.adgross.heroes.cache.HeroCache;
+import io.github.adgross.heroes.config.RequestTiming;
+import io.github.adgross.heroes.exception.HeroNotFoundException;
+import io.github.adgross.heroes.exception.InvalidCursorException;
+import io.github.adgross.heroes.exception.UnprocessedItemsException;
+import io.github.adgross.heroes.exception.VersionMismatchException;
 import io.github.adgross.heroes.model.Hero;
-import java.net.URI;
+import io.github.adgross.heroes.model.HeroPage;
+import io.github.adgross.heroes.model.HeroTableSchema;
+import io.github.adgross.heroes.model.UniverseStats;
+import io.github.adgross.heroes.repository.ThroughputLimiter.Kind;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
+import reactor.core.publisher.BufferOverflowStrategy;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchGetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.CreateTableEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.EnhancedGlobalSecondaryIndex;
+import software.amazon.awssdk.enhanced.dynamodb.model.GetItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.ReadBatch;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
-import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
+/**
+ * The DynamoDB HeroStore, used unless the in-memory profile is active.
+ */
 @Repository
+@Profile("!" + InMemoryHeroStore.PROFILE)
 @Slf4j
-public class HeroRepository {
+public class HeroRepository implements HeroStore {
+  private static final int BATCH_GET_SIZE = 100;
+  private static final int BATCH_WRITE_SIZE = 25;
+  private static final String TIMER = "heroes.repository";
+  private static final String ID = "id";
+  private static final String VERSION = "version";
+
   private final DynamoDbAsyncClient ddb;
   private final DynamoDbEnhancedAsyncClient enhancedClient;
   private final DynamoDbAsyncTable<Hero> heroTable;
   private final String tableName;
+  private final HeroCache heroCache;
+  private final HeroGetCoalescer heroGetCoalescer;
+  private final HeroStatsRepository heroStats;
+  private final ThroughputLimiter limiter;
+  private final MeterRegistry meterRegistry;
+  private final boolean parallelScan;
+  private final int scanSegments;
+  private final int scanPageSize;
+  private final int scanPrefetch;
+  private final int scanBufferLimit;
+  private final BufferOverflowStrategy scanOverflow;
+  private final int batchConcurrency;
+  private final int batchMaxRetries;
+  private final Duration batchBackoff;
 
-  public HeroRepository(@Value("${dynamodb.region}") String region,
-                        @Value("${dynamodb.endpoint}") String endpoint,
-                        @Value("${dynamodb.table}") String table) {
-    var dynamodbRegion = Region.of(region);
+  public HeroRepository(DynamoDbAsyncClient ddb,
+                        @Value("${dynamodb.table}") String table,
+                        @Value("${dynamodb.bean-schema:false}") boolean beanSchema,
+                        @Value("${dynamodb.scan.parallel:false}") boolean parallelScan,
+                        @Value("${dynamodb.scan.segments:4}") int scanSegments,
+                        @Value("${dynamodb.scan.page-size:100}") int scanPageSize,
+                        @Value("${dynamodb.scan.prefetch:4}") int scanPrefetch,
+                        @Value("${dynamodb.scan.buffer-limit:0}") int scanBufferLimit,
+                        @Value("${dynamodb.scan.overflow:error}")
+                            BufferOverflowStrategy scanOverflow,
+                        @Value("${dynamodb.batch.concurrency:4}") int batchConcurrency,
+                        @Value("${dynamodb.batch.max-retries:8}") int batchMaxRetries,
+                        @Value("${dynamodb.batch.backoff:50ms}") Duration batchBackoff,
+                        HeroCache heroCache,
+                        HeroGetCoalescer heroGetCoalescer,
+                        HeroStatsRepository heroStats,
+                        ThroughputLimiter limiter,
+                        ObjectProvider<MeterRegistry> meterRegistry) {
+    this.heroCache = heroCache;
+    this.heroGetCoalescer = heroGetCoalescer;
+    this.heroStats = heroStats;
+    this.limiter = limiter;
+    this.meterRegistry = meterRegistry.getIfAvailable(SimpleMeterRegistry::new);
+    this.parallelScan = parallelScan;
+    this.scanSegments = scanSegments;
+    this.scanPageSize = scanPageSize;
+    this.scanPrefetch = scanPrefetch;
+    this.scanBufferLimit = scanBufferLimit;
+    this.scanOverflow = scanOverflow;
+    this.batchConcurrency = batchConcurrency;
+    this.batchMaxRetries = batchMaxRetries;
+    this.batchBackoff = batchBackoff;
+    this.ddb = ddb;
     tableName = table;
-    ddb = DynamoDbAsyncClient.builder()
-        .region(dynamodbRegion)
-        .endpointOverride(URI.create(endpoint))
-        .build();
+    // the version is kept by replace, the default VersionedRecordExtension would add
+    // conditions that BatchWriteItem rejects
     enhancedClient = DynamoDbEnhancedAsyncClient.builder()
         .dynamoDbClient(ddb)
+        .extensions(List.of())
         .build();
     heroTable = enhancedClient.table(
         table,
-        TableSchema.fromBean(Hero.class));
-    Mono.fromFuture(heroTable.createTable())
-        .subscribe(
-            ok -> log.info("Table created: " + table),
-            fail -> log.info("Looks we already have the table " + table)
-        );
+        HeroTableSchema.create(beanSchema));
   }
 
+  /**
+   * Create the table if it doesn't exist, completes once it is ACTIVE.
+   */
+  public Mono<Void> ensureTable() {
+    return Tables.createIfMissing(ddb, tableName,
+        () -> heroTable.createTable(createTableRequest()));
+  }
+
+  /**
+   * Strongly consistent read, the hero is cached by findById and an eventually consistent read
+   * right after a write could cache the replaced hero.
+   */
+  @Override
   public Mono<Hero> get(String id) {
-    var key = Key.builder()
-        .partitionValue(id)
+    var request = GetItemEnhancedRequest.builder()
+        .key(Key.builder().partitionValue(id).build())
+        .consistentRead(true)
         .build();
-    var result = heroTable.getItem(key);
-    return Mono.fromFuture(result);
+    return read("get", Mono.fromFuture(() -> heroTable.getItem(request)));
   }
 
+  @Override
   public Flux<Hero> getAll() {
-    var results = heroTable.scan().items();
-    return Flux.from(results).onBackpressureBuffer();
+    return getAllProjected(List.of());
+  }
+
+  /**
+   * Get the heroes with the given ids using BatchGetItem, ids not found are skipped.
+   * Ids are sent in chunks of 100 keys, running up to dynamodb.batch.concurrency chunks
+   * at a time. Unprocessed keys are retried with exponential backoff.
+   */
+  @Override
+  public Flux<Hero> getAll(Collection<String> ids) {
+    // BatchGetItem rejects duplicated keys
+    return Flux.fromIterable(new LinkedHashSet<>(ids))
+        .map(id -> Key.builder().partitionValue(id).build())
+        .buffer(BATCH_GET_SIZE)
+        .flatMap(keys -> read("getAllByIds", batchGet(keys, 0).collectList()), batchConcurrency)
+        .flatMapIterable(heroes -> heroes);
+  }
+
+  /**
+   * Scan all heroes reading only the given attributes, or all of them if empty.
+   * Pages of dynamodb.scan.page-size heroes are read as the subscriber asks for them, at most
+   * dynamodb.scan.prefetch pages ahead. With dynamodb.scan.buffer-limit set the scan runs
+   * ahead of the subscriber instead, and dynamodb.scan.overflow decides what happens once
+   * that many heroes are waiting.
+   */
+  @Override
+  public Flux<Hero> getAllProjected(List<String> attributes) {
+    Flux<Hero> heroes;
+    if (parallelScan) {
+      heroes = getAllParallel(attributes);
+    } else {
+      var request = ScanEnhancedRequest.builder().limit(scanPageSize);
+      if (!attributes.isEmpty()) {
+        request.attributesToProject(attributes);
+      }
+      heroes = readPages(timedPages("getAll", Flux.from(heroTable.scan(request.build()))))
+          .concatMapIterable(Page::items, scanPrefetch);
+    }
+    if (scanBufferLimit <= 0) {
+      return heroes;
+    }
+    var overflow = meterRegistry.counter("heroes.scan.overflow");
+    return heroes.onBackpressureBuffer(scanBufferLimit, hero -> overflow.increment(),
+        scanOverflow);
+  }
+
+  /**
+   * Scan the table using DynamoDB parallel scan, all segments are read concurrently.
+   * Heroes are emitted as they arrive, so there is no ordering between segments.
+   */
+  public Flux<Hero> getAllParallel() {
+    return getAllParallel(List.of());
+  }
+
+  /**
+   * Parallel scan reading only the given attributes, or all of them if empty.
+   */
+  public Flux<Hero> getAllParallel(List<String> attributes) {
+    var schema = heroTable.tableSchema();
+    return Flux.range(0, scanSegments)
+        .flatMap(segment -> {
+          var request = ScanRequest.builder()
+              .tableName(tableName)
+              .segment(segment)
+              .totalSegments(scanSegments)
+              .limit(scanPageSize);
+          if (!attributes.isEmpty()) {
+            // aliased, as attribute names like "name" are reserved words
+            var names = new HashMap<String, String>();
+            for (var attribute : attributes) {
+              names.put("#p" + names.size(), attribute);
+            }
+            request.projectionExpression(String.join(",", names.keySet()))
+                .expressionAttributeNames(names);
+          }
+          var pages = Flux.from(ddb.scanPaginator(request.build()));
+          return readPages(timedPages("getAllParallel", pages))
+              .concatMapIterable(ScanResponse::items);
+        }, scanSegments)
+        .map(schema::mapToItem);
+  }
+
+  /**
+   * Query the universe index, heroes are sorted by name.
+   */
+  @Override
+  public Flux<Hero> getByUniverse(String universe) {
+    return getByUniverse(universe, List.of());
+  }
+
+  /**
+   * Query the universe index reading only the given attributes, or all of them if empty.
+   */
+  @Override
+  public Flux<Hero> getByUniverse(String universe, List<String> attributes) {
+    var request = QueryEnhancedRequest.builder()
+        .queryConditional(QueryConditional.keyEqualTo(key -> key.partitionValue(universe)));
+    if (!attributes.isEmpty()) {
+      request.attributesToProject(attributes);
+    }
+    var pages = Flux.from(heroTable.index(Hero.UNIVERSE_INDEX).query(request.build()));
+    return readPages(timedPages("getByUniverse", pages)).concatMapIterable(Page::items);
   }
 
+  /**
+   * Scan a single page of at most limit heroes.
+   *
+   * @param cursor the next cursor of the previous page, null for the first page
+   */
+  @Override
+  public Mono<HeroPage> getPage(int limit, String cursor) {
+    var request = ScanEnhancedRequest.builder().limit(limit);
+    if (cursor != null) {
+      try {
+        request.exclusiveStartKey(CursorCodec.decode(cursor, ID));
+      } catch (IllegalArgumentException e) {
+        return Mono.error(new InvalidCursorException(cursor));
+      }
+    }
+    return read("getPage", Flux.from(heroTable.scan(request.build()))
+        .next()
+        .map(page -> new HeroPage(page.items(), CursorCodec.encode(page.lastEvaluatedKey())))
+        .defaultIfEmpty(new HeroPage(List.of(), null)));
+  }
+
+  /**
+   * Create or replace the hero, its version is set to the written one.
+   */
+  @Override
   public Mono<Void> put(Hero hero) {
-    return Mono.fromFuture(heroTable.putItem(hero));
+    return write("put", replace(hero, null, false).then());
   }
 
+  /**
+   * Create all heroes using BatchWriteItem, for new ids only.
+   * Heroes are sent in chunks of 25 items, running up to dynamodb.batch.concurrency chunks
+   * at a time. Unprocessed items are retried with exponential backoff. As with putBatch the
+   * heroes are counted as new in the universe stats and written with version 1, an existing
+   * hero would be replaced but counted twice.
+   *
+   * @return the heroes written, emitted as each chunk completes
+   */
+  @Override
+  public Flux<Hero> putAll(Flux<Hero> heroes) {
+    return heroes.buffer(BATCH_WRITE_SIZE)
+        .flatMap(chunk -> {
+          // BatchWriteItem rejects two requests for the same key, keep the last one
+          var unique = new LinkedHashMap<String, Hero>();
+          chunk.forEach(hero -> unique.put(hero.getId(), hero));
+          var items = List.copyOf(unique.values());
+          return write("putAll", putChunk(items)).flatMapMany(unprocessed -> unprocessed.isEmpty()
+              ? Flux.fromIterable(items)
+              : Flux.error(new UnprocessedItemsException(unprocessed.size())));
+        }, batchConcurrency);
+  }
+
+  /**
+   * Put up to 25 heroes with distinct ids in a single BatchWriteItem.
+   * Unprocessed items are retried with exponential backoff. BatchWriteItem can't return the
+   * replaced items, so the heroes are counted as new in the universe stats and written with
+   * version 1.
+   *
+   * @return the heroes still unprocessed after all retries, empty if all were written
+   */
+  @Override
+  public Mono<List<Hero>> putBatch(List<Hero> heroes) {
+    return write("putBatch", putChunk(heroes));
+  }
+
+  /**
+   * Replace all attributes of the hero, creating it if it doesn't exist.
+   *
+   * @return the hero with the written version
+   */
+  @Override
   public Mono<Hero> update(Hero hero) {
-    return Mono.fromFuture(heroTable.updateItem((hero)));
+    return write("update", replace(hero, null, false));
+  }
+
+  /**
+   * Replace the hero only if its stored version is the expected one.
+   *
+   * @return the hero with the written version, or VersionMismatchException if the hero doesn't
+   *     exist or has another version
+   */
+  @Override
+  public Mono<Hero> update(Hero hero, long expectedVersion) {
+    return write("update", replace(hero, expectedVersion, false));
+  }
+
+  @Override
+  public Mono<Hero> updateExisting(Hero hero) {
+    return write("update", replace(hero, null, true));
+  }
+
+  /**
+   * Change only the non null attributes of an existing hero and add filmsIncrement to its
+   * films, in a single UpdateItem without reading the hero first.
+   *
+   * @param changes the id of the hero and the attributes to set
+   * @param filmsIncrement added to the films, null to leave them, can't be used together with
+   *     changes.films
+   * @param expectedVersion the version the stored hero must have, null for any
+   * @return the patched hero, HeroNotFoundException if it doesn't exist or
+   *     VersionMismatchException if it isn't at the expected version
+   */
+  @Override
+  public Mono<Hero> patch(Hero changes, Integer filmsIncrement, Long expectedVersion) {
+    if (changes.getFilms() != null && filmsIncrement != null) {
+      return Mono.error(new IllegalArgumentException("films can't be set and incremented"));
+    }
+    var item = heroTable.tableSchema().itemToMap(changes, true);
+    var names = new HashMap<String, String>();
+    var values = new HashMap<String, AttributeValue>();
+    var set = new ArrayList<String>();
+    for (var attribute : item.keySet()) {
+      if (attribute.equals(ID) || attribute.equals(VERSION)) {
+        continue;
+      }
+      var alias = "#a" + names.size();
+      var value = ":a" + values.size();
+      names.put(alias, attribute);
+      values.put(value, item.get(attribute));
+      set.add(alias + " = " + value);
+    }
+    var add = new ArrayList<String>();
+    names.put("#version", VERSION);
+    values.put(":one", AttributeValue.builder().n("1").build());
+    add.add("#version :one");
+    if (filmsIncrement != null) {
+      names.put("#films", "films");
+      values.put(":films", AttributeValue.builder().n(filmsIncrement.toString()).build());
+      add.add("#films :films");
+    }
+    names.put("#id", ID);
+    var condition = "attribute_exists(#id)";
+    if (expectedVersion != null) {
+      values.put(":expected", AttributeValue.builder().n(expectedVersion.toString()).build());
+      condition += " AND #version = :expected";
+    }
+    var expression = (set.isEmpty() ? "" : "SET " + String.join(", ", set) + " ")
+        + "ADD " + String.join(", ", add);
+    var request = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of(ID, item.get(ID)))
+        .updateExpression(expression)
+        .conditionExpression(condition)
+        .expressionAttributeNames(names)
+        .expressionAttributeValues(values)
+        .returnValues(ReturnValue.ALL_OLD)
+        .build();
+    var id = changes.getId();
+    var schema = heroTable.tableSchema();
+    return write("patch", Mono.fromFuture(() -> ddb.updateItem(request))
+        .onErrorMap(ConditionalCheckFailedException.class, e -> expectedVersion == null
+            ? new HeroNotFoundException(id)
+            : new VersionMismatchException(id, expectedVersion))
+        .flatMap(response -> {
+          // the update is atomic, applying it to the old hero gives the stored one
+          var old = schema.mapToItem(response.attributes());
+          var patched = schema.mapToItem(response.attributes());
+          if (changes.getName() != null) {
+            patched.setName(changes.getName());
+          }
+          if (changes.getUniverse() != null) {
+            patched.setUniverse(changes.getUniverse());
+          }
+          int films = changes.getFilms() != null ? changes.getFilms()
+              : old.getFilms() != null ? old.getFilms() : 0;
+          patched.setFilms(filmsIncrement == null ? films : films + filmsIncrement);
+          patched.setVersion(old.getVersion() == null ? 1 : old.getVersion() + 1);
+          return heroStats.record(old, patched).thenReturn(patched);
+        })
+        .doFinally(signal -> evict(id)));
   }
 
   public Mono<Hero> delete(Hero hero) {
-    return Mono.fromFuture(heroTable.deleteItem(hero));
+    return write("delete", Mono.fromFuture(() -> heroTable.deleteItem(hero))
+        .flatMap(old -> heroStats.record(old, null).thenReturn(old))
+        .doFinally(signal -> evict(hero.getId())));
   }
 
+  @Override
   public Mono<Hero> delete(String id) {
     var key = Key.builder()
         .partitionValue(id)
         .build();
-    return Mono.fromFuture(heroTable.deleteItem(key));
+    return write("delete", Mono.fromFuture(() -> heroTable.deleteItem(key))
+        .flatMap(old -> heroStats.record(old, null).thenReturn(old))
+        .doFinally(signal -> evict(id)));
+  }
+
+  @Override
+  public Flux<UniverseStats> stats() {
+    return heroStats.getAll();
+  }
+
+  @Override
+  public Mono<UniverseStats> stats(String universe) {
+    return heroStats.get(universe);
   }
 
+  /**
+   * Recount the universe stats from a scan of the heroes, for a table written before the
+   * counters existed.
+   */
+  public Mono<Void> rebuildStats() {
+    return timed("rebuildStats", heroStats.rebuild(getAllProjected(List.of("universe", "films"))));
+  }
+
+  /**
+   * Delete and create the hero and stats tables again, completes once they are ACTIVE.
+   */
   public Mono<Void> resetTable() {
-    var delRequest = DeleteTableRequest.builder().tableName(tableName).build();
-    var delete = Mono.fromFuture(ddb.deleteTable(delRequest));
-    var create = Mono.fromFuture(heroTable.createTable());
+    var reset = Tables.deleteIfExists(ddb, tableName).then(ensureTable());
+    return timed("resetTable", reset.then(heroStats.resetTable())
+        .doFinally(signal -> {
+          heroCache.invalidateAll();
+          heroGetCoalescer.invalidateAll();
+        }));
+  }
+
+  /**
+   * Replace all attributes of the hero with an UpdateItem that increments its version, and
+   * unlike the enhanced client returns the replaced hero, needed to move its counts out of the
+   * universe stats. The written version is set on the hero.
+   *
+   * @param expectedVersion the version the stored hero must have, null for any
+   * @param existing whether the hero must already exist
+   */
+  private Mono<Hero> replace(Hero hero, Long expectedVersion, boolean existing) {
+    var schema = heroTable.tableSchema();
+    var item = schema.itemToMap(hero, true);
+    var names = new HashMap<String, String>();
+    var values = new HashMap<String, AttributeValue>();
+    var set = new ArrayList<String>();
+    var remove = new ArrayList<String>();
+    for (var attribute : schema.attributeNames()) {
+      if (attribute.equals(ID) || attribute.equals(VERSION)) {
+        continue;
+      }
+      // aliased, as attribute names like "name" are reserved words
+      var alias = "#a" + names.size();
+      names.put(alias, attribute);
+      if (item.containsKey(attribute)) {
+        values.put(":a" + values.size(), item.get(attribute));
+        set.add(alias + " = :a" + (values.size() - 1));
+      } else {
+        remove.add(alias);
+      }
+    }
+    names.put("#version", VERSION);
+    values.put(":one", AttributeValue.builder().n("1").build());
+    var expression = (set.isEmpty() ? "" : "SET " + String.join(", ", set) + " ")
+        + (remove.isEmpty() ? "" : "REMOVE " + String.join(", ", remove) + " ")
+        + "ADD #version :one";
+    var request = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of(ID, item.get(ID)))
+        .updateExpression(expression)
+        .returnValues(ReturnValue.ALL_OLD);
+    var conditions = new ArrayList<String>();
+    if (existing) {
+      names.put("#id", ID);
+      conditions.add("attribute_exists(#id)");
+    }
+    if (expectedVersion != null) {
+      values.put(":expected", AttributeValue.builder().n(expectedVersion.toString()).build());
+      conditions.add("#version = :expected");
+    }
+    if (!conditions.isEmpty()) {
+      request.conditionExpression(String.join(" AND ", conditions));
+    }
+    request.expressionAttributeNames(names).expressionAttributeValues(values);
+    return Mono.fromFuture(() -> ddb.updateItem(request.build()))
+        .onErrorMap(ConditionalCheckFailedException.class, e -> expectedVersion == null
+            ? new HeroNotFoundException(hero.getId())
+            : new VersionMismatchException(hero.getId(), expectedVersion))
+        .flatMap(response -> {
+          var old = response.hasAttributes() && !response.attributes().isEmpty()
+              ? schema.mapToItem(response.attributes())
+              : null;
+          hero.setVersion(old == null || old.getVersion() == null ? 1 : old.getVersion() + 1);
+          return heroStats.record(old, hero).thenReturn(hero);
+        })
+        .doFinally(signal -> evict(hero.getId()));
+  }
+
+  private Mono<List<Hero>> putChunk(List<Hero> heroes) {
+    heroes.forEach(hero -> hero.setVersion(1L));
+    return batchPut(heroes, 0).flatMap(unprocessed -> {
+      var written = new ArrayList<>(heroes);
+      written.removeAll(unprocessed);
+      return heroStats.recordCreated(written).thenReturn(unprocessed);
+    });
+  }
+
+  /**
+   * Drop the cached hero and any in-flight get, which may have read it before the write.
+   */
+  private void evict(String id) {
+    heroCache.invalidate(id);
+    heroGetCoalescer.invalidate(id);
+  }
+
+  /**
+   * Timed read, shed by the limiter when over the read rate.
+   */
+  private <T> Mono<T> read(String operation, Mono<T> mono) {
+    return limiter.limit(Kind.READ, timed(operation, mono));
+  }
+
+  /**
+   * Pages of a scan or query, each page a read request taken from the limiter. A scan runs
+   * until the subscriber consumed it, so the pages are timed by timedPages instead.
+   */
+  private <P> Flux<P> readPages(Flux<P> pages) {
+    return limiter.limit(Kind.READ, pages);
+  }
+
+  /**
+   * Timed write, shed by the limiter when over the write rate.
+   */
+  private <T> Mono<T> write(String operation, Mono<T> mono) {
+    return limiter.limit(Kind.WRITE, timed(operation, mono));
+  }
+
+  /**
+   * Time each subscription to the operation, tagged with the operation and its outcome, and add
+   * it to the timing of the request it runs for. The request timing is added before the result
+   * goes downstream, doFinally runs after it and the request could already be logged.
+   */
+  private <T> Mono<T> timed(String operation, Mono<T> mono) {
+    return Mono.deferContextual(context -> {
+      var sample = Timer.start(meterRegistry);
+      var timed = mono.doFinally(signal -> sample.stop(timer(operation, signal)));
+      return RequestTiming.of(context)
+          .map(timing -> {
+            var start = System.nanoTime();
+            var added = new AtomicBoolean();
+            Runnable add = () -> {
+              if (added.compareAndSet(false, true)) {
+                timing.addDynamodb(System.nanoTime() - start);
+              }
+            };
+            return timed.doOnEach(signal -> add.run()).doOnCancel(add);
+          })
+          .orElse(timed);
+    });
+  }
+
+  /**
+   * Time each page DynamoDB returns, like timed, for the time it is awaited. The next page is
+   * only fetched once requested, so the time runs while a requested page is awaited and not
+   * while the subscriber, like a slow client, is still consuming the earlier ones.
+   */
+  private <P> Flux<P> timedPages(String operation, Flux<P> pages) {
+    return Flux.deferContextual(context -> {
+      var timing = RequestTiming.of(context);
+      var clock = new PageClock();
+      return pages.doOnRequest(clock::requested)
+          .doOnEach(signal -> {
+            if (signal.isOnNext() || signal.isOnError()) {
+              var nanos = clock.received();
+              timer(operation, signal.getType()).record(nanos, TimeUnit.NANOSECONDS);
+              timing.ifPresent(request -> request.addDynamodb(nanos));
+            }
+          });
+    });
+  }
+
+  private Timer timer(String operation, SignalType signal) {
+    String outcome = signal == SignalType.ON_ERROR ? "error"
+        : signal == SignalType.CANCEL ? "cancelled"
+        : "success";
+    return Timer.builder(TIMER)
+        .description("HeroRepository operations")
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  private static CreateTableEnhancedRequest createTableRequest() {
+    var universeIndex = EnhancedGlobalSecondaryIndex.builder()
+        .indexName(Hero.UNIVERSE_INDEX)
+        .projection(projection -> projection.projectionType(ProjectionType.ALL))
+        .build();
+    return CreateTableEnhancedRequest.builder()
+        .globalSecondaryIndices(universeIndex)
+        .build();
+  }
+
+  private Flux<Hero> batchGet(List<Key> keys, int attempt) {
+    var readBatch = ReadBatch.builder(Hero.class).mappedTableResource(heroTable);
+    keys.forEach(readBatch::addGetItem);
+    var request = BatchGetItemEnhancedRequest.builder()
+        .readBatches(readBatch.build())
+        .build();
+    // only the first page is taken, the publisher would resubmit unprocessed keys without delay
+    return Mono.from(enhancedClient.batchGetItem(request))
+        .flatMapMany(page -> {
+          var found = Flux.fromIterable(page.resultsForTable(heroTable));
+          var unprocessed = page.unprocessedKeysForTable(heroTable);
+          if (unprocessed.isEmpty()) {
+            return found;
+          }
+          // keys are left unprocessed when DynamoDB throttles them
+          limiter.throttled(Kind.READ);
+          if (attempt >= batchMaxRetries) {
+            return found.concatWith(Mono.error(
+                new UnprocessedItemsException(unprocessed.size())));
+          }
+          return found.concatWith(Mono.delay(backoff(attempt))
+              .flatMapMany(ignored -> batchGet(unprocessed, attempt + 1)));
+        });
+  }
+
+  private Mono<List<Hero>> batchPut(List<Hero> heroes, int attempt) {
+    var writeBatch = WriteBatch.builder(Hero.class).mappedTableResource(heroTable);
+    heroes.forEach(writeBatch::addPutItem);
+    var request = BatchWriteItemEnhancedRequest.builder()
+        .writeBatches(writeBatch.build())
+        .build();
+    return Mono.fromFuture(() -> enhancedClient.batchWriteItem(request))
+        .doFinally(signal -> heroes.forEach(hero -> evict(hero.getId())))
+        .flatMap(result -> {
+          var unprocessed = result.unprocessedPutItemsForTable(heroTable);
+          if (unprocessed.isEmpty()) {
+            return Mono.just(unprocessed);
+          }
+          limiter.throttled(Kind.WRITE);
+          if (attempt >= batchMaxRetries) {
+            return Mono.just(unprocessed);
+          }
+          return Mono.delay(backoff(attempt))
+              .then(batchPut(unprocessed, attempt + 1));
+        });
+  }
+
+  /**
+   * Exponential backoff with full jitter, capped at 64 times the base delay.
+   */
+  private Duration backoff(int attempt) {
+    long max = batchBackoff.toMillis() << Math.min(attempt, 6);
+    return Duration.ofMillis(ThreadLocalRandom.current().nextLong(max + 1));
+  }
+
+  /**
+   * Time since the awaited page was requested, or since the previous page arrived when more
+   * were requested.
+   */
+  private static final class PageClock {
+    private long pending;
+    private long since;
+
+    synchronized void requested(long count) {
+      if (pending == 0) {
+        since = System.nanoTime();
+      }
+      pending = pending + count < 0 ? Long.MAX_VALUE : pending + count;
+    }
 
-    return delete.then(create);
+    synchronized long received() {
+      var now = System.nanoTime();
+      var nanos = now - since;
+      if (pending != Long.MAX_VALUE) {
+        pending--;
+      }
+      since = now;
+      return nanos;
+    }
   }
 
 }
@@ -0,0 +1,222 @@
+package io.github.adgross.heroes.repository;
+
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.UniverseStats;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BillingMode;
+import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+/**
+ * Number of heroes and sum of their films per universe, kept in their own table.
+ * Each change is applied with an ADD update expression, so concurrent writes never lose counts.
+ * The counters are updated after the hero is written, a failure in between is logged and
+ * leaves them off by that change.
+ */
+@Repository
+@Profile("!" + InMemoryHeroStore.PROFILE)
+@Slf4j
+public class HeroStatsRepository {
+  private static final String UNIVERSE = "universe";
+  private static final String HEROES = "heroes";
+  private static final String FILMS = "films";
+
+  private final DynamoDbAsyncClient ddb;
+  private final String tableName;
+  private final boolean enabled;
+
+  public HeroStatsRepository(DynamoDbAsyncClient ddb,
+                             @Value("${dynamodb.stats.table:heroes-stats}") String table,
+                             @Value("${dynamodb.stats.enabled:true}") boolean enabled) {
+    this.ddb = ddb;
+    this.tableName = table;
+    this.enabled = enabled;
+  }
+
+  /**
+   * Create the table if it doesn't exist, completes once it is ACTIVE.
+   */
+  public Mono<Void> ensureTable() {
+    if (!enabled) {
+      return Mono.empty();
+    }
+    return Tables.createIfMissing(ddb, tableName, () -> ddb.createTable(createTableRequest()));
+  }
+
+  /**
+   * Apply a hero change to the stats, old is the replaced or deleted hero and hero the one
+   * written, either may be null.
+   */
+  public Mono<Void> record(Hero old, Hero hero) {
+    var deltas = new LinkedHashMap<String, long[]>();
+    if (old != null) {
+      addDelta(deltas, old, -1);
+    }
+    if (hero != null) {
+      addDelta(deltas, hero, 1);
+    }
+    return apply(deltas);
+  }
+
+  /**
+   * Count the heroes as new, one update per universe.
+   */
+  public Mono<Void> recordCreated(Collection<Hero> heroes) {
+    var deltas = new LinkedHashMap<String, long[]>();
+    heroes.forEach(hero -> addDelta(deltas, hero, 1));
+    return apply(deltas);
+  }
+
+  /**
+   * Replace the counters with the ones of the given heroes, a scan of the hero table, deleting
+   * the universes left without heroes. Meant for a table written before the counters existed,
+   * writes made while it runs may be lost or counted twice.
+   */
+  public Mono<Void> rebuild(Flux<Hero> heroes) {
+    if (!enabled) {
+      return Mono.empty();
+    }
+    var scan = ScanRequest.builder().tableName(tableName).build();
+    return heroes
+        .collect(LinkedHashMap<String, long[]>::new, (counts, hero) -> addDelta(counts, hero, 1))
+        .flatMap(counts -> Flux.fromIterable(counts.entrySet())
+            .flatMap(count -> set(count.getKey(), count.getValue()[0], count.getValue()[1]))
+            .thenMany(Flux.from(ddb.scanPaginator(scan).items()))
+            .map(item -> item.get(UNIVERSE).s())
+            .filter(universe -> !counts.containsKey(universe))
+            .flatMap(this::delete)
+            .then(Mono.fromRunnable(() -> log.info("Stats rebuilt for {} universes",
+                counts.size()))));
+  }
+
+  public Flux<UniverseStats> getAll() {
+    var request = ScanRequest.builder().tableName(tableName).build();
+    return Flux.from(ddb.scanPaginator(request).items())
+        .map(HeroStatsRepository::toStats)
+        .filter(stats -> stats.getHeroes() > 0);
+  }
+
+  /**
+   * Stats of the universe, zeros if it has no heroes.
+   */
+  public Mono<UniverseStats> get(String universe) {
+    var request = GetItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of(UNIVERSE, AttributeValue.builder().s(universe).build()))
+        .build();
+    return Mono.fromFuture(() -> ddb.getItem(request))
+        .filter(response -> response.hasItem() && !response.item().isEmpty())
+        .map(response -> toStats(response.item()))
+        .defaultIfEmpty(new UniverseStats(universe, 0, 0));
+  }
+
+  /**
+   * Delete and create the table again, completes once it is ACTIVE.
+   */
+  public Mono<Void> resetTable() {
+    if (!enabled) {
+      return Mono.empty();
+    }
+    return Tables.deleteIfExists(ddb, tableName).then(ensureTable());
+  }
+
+  private CreateTableRequest createTableRequest() {
+    return CreateTableRequest.builder()
+        .tableName(tableName)
+        .keySchema(KeySchemaElement.builder()
+            .attributeName(UNIVERSE)
+            .keyType(KeyType.HASH)
+            .build())
+        .attributeDefinitions(AttributeDefinition.builder()
+            .attributeName(UNIVERSE)
+            .attributeType(ScalarAttributeType.S)
+            .build())
+        .billingMode(BillingMode.PAY_PER_REQUEST)
+        .build();
+  }
+
+  private Mono<Void> apply(Map<String, long[]> deltas) {
+    if (!enabled) {
+      return Mono.empty();
+    }
+    return Flux.fromIterable(deltas.entrySet())
+        .filter(delta -> delta.getValue()[0] != 0 || delta.getValue()[1] != 0)
+        .flatMap(delta -> add(delta.getKey(), delta.getValue()[0], delta.getValue()[1]))
+        .then();
+  }
+
+  private Mono<Void> add(String universe, long heroes, long films) {
+    var request = UpdateItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of(UNIVERSE, AttributeValue.builder().s(universe).build()))
+        .updateExpression("ADD #heroes :heroes, #films :films")
+        .expressionAttributeNames(Map.of("#heroes", HEROES, "#films", FILMS))
+        .expressionAttributeValues(Map.of(
+            ":heroes", number(heroes),
+            ":films", number(films)))
+        .build();
+    return Mono.fromFuture(() -> ddb.updateItem(request))
+        .doOnError(e -> log.warn("Failed to update the stats of universe {}", universe, e))
+        .onErrorResume(e -> Mono.empty())
+        .then();
+  }
+
+  private Mono<Void> set(String universe, long heroes, long films) {
+    var request = PutItemRequest.builder()
+        .tableName(tableName)
+        .item(Map.of(
+            UNIVERSE, AttributeValue.builder().s(universe).build(),
+            HEROES, number(heroes),
+            FILMS, number(films)))
+        .build();
+    return Mono.fromFuture(() -> ddb.putItem(request)).then();
+  }
+
+  private Mono<Void> delete(String universe) {
+    var request = DeleteItemRequest.builder()
+        .tableName(tableName)
+        .key(Map.of(UNIVERSE, AttributeValue.builder().s(universe).build()))
+        .build();
+    return Mono.fromFuture(() -> ddb.deleteItem(request)).then();
+  }
+
+  private static void addDelta(Map<String, long[]> deltas, Hero hero, int sign) {
+    if (hero.getUniverse() == null) {
+      return;
+    }
+    var delta = deltas.computeIfAbsent(hero.getUniverse(), universe -> new long[2]);
+    delta[0] += sign;
+    delta[1] += sign * (hero.getFilms() == null ? 0L : hero.getFilms());
+  }
+
+  private static AttributeValue number(long value) {
+    return AttributeValue.builder().n(Long.toString(value)).build();
+  }
+
+  private static UniverseStats toStats(Map<String, AttributeValue> item) {
+    return new UniverseStats(item.get(UNIVERSE).s(), numberOf(item.get(HEROES)),
+        numberOf(item.get(FILMS)));
+  }
+
+  private static long numberOf(AttributeValue value) {
+    return value == null ? 0 : Long.parseLong(value.n());
+  }
+}
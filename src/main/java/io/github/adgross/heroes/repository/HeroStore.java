@@ -0,0 +1,112 @@
+package io.github.adgross.heroes.repository;
+
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroPage;
+import io.github.adgross.heroes.model.UniverseStats;
+import java.util.Collection;
+import java.util.List;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Storage of the heroes and their universe stats, the DynamoDB {@link HeroRepository} or the
+ * {@link InMemoryHeroStore} of the in-memory profile.
+ * Writes set the written version on the hero and invalidate it in the HeroCache.
+ */
+public interface HeroStore {
+
+  Mono<Hero> get(String id);
+
+  Flux<Hero> getAll();
+
+  /**
+   * Heroes with the given ids, ids not found are skipped.
+   */
+  Flux<Hero> getAll(Collection<String> ids);
+
+  /**
+   * All heroes with only the given attributes, or all of them if empty.
+   */
+  Flux<Hero> getAllProjected(List<String> attributes);
+
+  /**
+   * Heroes of the universe sorted by name.
+   */
+  Flux<Hero> getByUniverse(String universe);
+
+  Flux<Hero> getByUniverse(String universe, List<String> attributes);
+
+  /**
+   * A page of at most limit heroes.
+   *
+   * @param cursor the next cursor of the previous page, null for the first page
+   */
+  Mono<HeroPage> getPage(int limit, String cursor);
+
+  /**
+   * Create or replace the hero.
+   */
+  Mono<Void> put(Hero hero);
+
+  /**
+   * Create all heroes, for new ids only: a replaced hero would be counted twice in the universe
+   * stats.
+   *
+   * @return the heroes written
+   */
+  Flux<Hero> putAll(Flux<Hero> heroes);
+
+  /**
+   * Create up to 25 heroes with distinct new ids, like putAll.
+   *
+   * @return the heroes that could not be written, empty if all were
+   */
+  Mono<List<Hero>> putBatch(List<Hero> heroes);
+
+  /**
+   * Replace all attributes of the hero, creating it if it doesn't exist.
+   *
+   * @return the hero with the written version
+   */
+  Mono<Hero> update(Hero hero);
+
+  /**
+   * Replace the hero only if its stored version is the expected one.
+   *
+   * @return the hero with the written version, or VersionMismatchException if the hero doesn't
+   *     exist or has another version
+   */
+  Mono<Hero> update(Hero hero, long expectedVersion);
+
+  /**
+   * Replace all attributes of the hero only if it exists, whatever its version.
+   *
+   * @return the hero with the written version, or HeroNotFoundException if it doesn't exist
+   */
+  Mono<Hero> updateExisting(Hero hero);
+
+  /**
+   * Change only the non null attributes of an existing hero and add filmsIncrement to its films.
+   *
+   * @return the patched hero, HeroNotFoundException if it doesn't exist or
+   *     VersionMismatchException if it isn't at the expected version
+   */
+  Mono<Hero> patch(Hero changes, Integer filmsIncrement, Long expectedVersion);
+
+  /**
+   * Delete the hero.
+   *
+   * @return the deleted hero, empty if it didn't exist
+   */
+  Mono<Hero> delete(String id);
+
+  /**
+   * Stats of the universes with heroes.
+   */
+  Flux<UniverseStats> stats();
+
+  /**
+   * Stats of the universe, zeros if it has no heroes.
+   */
+  Mono<UniverseStats> stats(String universe);
+}
@@ -0,0 +1,104 @@
+package io.github.adgross.heroes.repository;
+
+import io.github.adgross.heroes.exception.UnprocessedItemsException;
+import io.github.adgross.heroes.exception.WriteQueueFullException;
+import io.github.adgross.heroes.model.Hero;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Coalesces single hero creates into BatchWriteItem requests, only creates are batched.
+ * Creates arriving within the window, or until 25 are pending, are sent together and each
+ * caller is completed with the outcome of its own item. Each hero has a new id, so a batch never
+ * holds two writes for the same key. At most max-pending writes can be queued or in flight,
+ * further writes are rejected until the queue drains.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "dynamodb.write-batching.enabled", havingValue = "true")
+public class HeroWriteBatcher implements DisposableBean {
+  private static final int BATCH_WRITE_SIZE = 25;
+
+  private final HeroStore heroStore;
+  private final Sinks.Many<PendingWrite> queue = Sinks.many().unicast().onBackpressureBuffer();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final int maxPending;
+  private final Disposable pipeline;
+
+  public HeroWriteBatcher(HeroStore heroStore,
+                          @Value("${dynamodb.write-batching.window:5ms}") Duration window,
+                          @Value("${dynamodb.write-batching.max-pending:1000}") int maxPending,
+                          @Value("${dynamodb.batch.concurrency:4}") int concurrency) {
+    this.heroStore = heroStore;
+    this.maxPending = maxPending;
+    pipeline = queue.asFlux()
+        .bufferTimeout(BATCH_WRITE_SIZE, window)
+        // the pending counter bounds what can be buffered here
+        .onBackpressureBuffer()
+        .flatMap(this::write, concurrency)
+        .subscribe();
+  }
+
+  /**
+   * Queue the new hero to be put in the next batch.
+   *
+   * @return the hero once written, or WriteQueueFullException if too many writes are pending
+   */
+  public Mono<Hero> put(Hero hero) {
+    return Mono.defer(() -> {
+      if (pending.incrementAndGet() > maxPending) {
+        pending.decrementAndGet();
+        return Mono.error(new WriteQueueFullException());
+      }
+      var write = new PendingWrite(hero, Sinks.one());
+      queue.emitNext(write, (signal, result) -> result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+      return write.result.asMono();
+    });
+  }
+
+  private Mono<Void> write(List<PendingWrite> writes) {
+    var heroes = writes.stream().map(write -> write.hero).collect(Collectors.toList());
+    return heroStore.putBatch(heroes)
+        .doOnNext(unprocessed -> {
+          var failed = unprocessed.stream().map(Hero::getId).collect(Collectors.toSet());
+          for (var write : writes) {
+            if (failed.contains(write.hero.getId())) {
+              write.result.tryEmitError(new UnprocessedItemsException(1));
+            } else {
+              write.result.tryEmitValue(write.hero);
+            }
+          }
+        })
+        .doOnError(error -> writes.forEach(write -> write.result.tryEmitError(error)))
+        .doFinally(signal -> pending.addAndGet(-writes.size()))
+        .onErrorResume(error -> {
+          log.warn("Batch write of {} heroes failed", writes.size(), error);
+          return Mono.empty();
+        })
+        .then();
+  }
+
+  @Override
+  public void destroy() {
+    queue.tryEmitComplete();
+    pipeline.dispose();
+  }
+
+  @AllArgsConstructor
+  private static class PendingWrite {
+    private final Hero hero;
+    private final Sinks.One<Hero> result;
+  }
+}
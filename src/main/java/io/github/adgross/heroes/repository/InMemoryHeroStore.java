@@ -0,0 +1,310 @@
+package io.github.adgross.heroes.repository;
+
+import io.github.adgross.heroes.cache.HeroCache;
+import io.github.adgross.heroes.exception.HeroNotFoundException;
+import io.github.adgross.heroes.exception.InvalidCursorException;
+import io.github.adgross.heroes.exception.VersionMismatchException;
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroPage;
+import io.github.adgross.heroes.model.UniverseStats;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * HeroStore kept in memory, used with the in-memory profile to run without DynamoDB and as the
+ * zero I/O baseline of load tests. Nothing is persisted and every instance has its own heroes.
+ * Heroes are sorted by id, a page cursor being the last id read, and each write is a
+ * compare-and-set of the stored hero retried while other writes change it.
+ */
+@Repository
+@Profile(InMemoryHeroStore.PROFILE)
+public class InMemoryHeroStore implements HeroStore {
+  public static final String PROFILE = "in-memory";
+  private static final String ID = "id";
+  private static final Comparator<Hero> BY_NAME =
+      Comparator.comparing(Hero::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+  // entries compare by identity, Hero equality ignores the version
+  private final ConcurrentNavigableMap<String, Entry> heroes = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, Counts> stats = new ConcurrentHashMap<>();
+  private final HeroCache heroCache;
+  private final HeroGetCoalescer heroGetCoalescer;
+
+  public InMemoryHeroStore(HeroCache heroCache, HeroGetCoalescer heroGetCoalescer) {
+    this.heroCache = heroCache;
+    this.heroGetCoalescer = heroGetCoalescer;
+  }
+
+  @Override
+  public Mono<Hero> get(String id) {
+    return Mono.fromSupplier(() -> {
+      var entry = heroes.get(id);
+      return entry == null ? null : copy(entry.hero);
+    });
+  }
+
+  @Override
+  public Flux<Hero> getAll() {
+    return Flux.defer(() -> Flux.fromIterable(heroes.values()))
+        .map(entry -> copy(entry.hero));
+  }
+
+  @Override
+  public Flux<Hero> getAll(Collection<String> ids) {
+    return Flux.defer(() -> Flux.fromIterable(new LinkedHashSet<>(ids)))
+        .concatMap(this::get);
+  }
+
+  @Override
+  public Flux<Hero> getAllProjected(List<String> attributes) {
+    return getAll().map(hero -> hero.project(attributes));
+  }
+
+  @Override
+  public Flux<Hero> getByUniverse(String universe) {
+    return getByUniverse(universe, List.of());
+  }
+
+  @Override
+  public Flux<Hero> getByUniverse(String universe, List<String> attributes) {
+    return getAll()
+        .filter(hero -> universe.equals(hero.getUniverse()))
+        .sort(BY_NAME)
+        .map(hero -> hero.project(attributes));
+  }
+
+  @Override
+  public Mono<HeroPage> getPage(int limit, String cursor) {
+    return Mono.defer(() -> {
+      NavigableMap<String, Entry> from = heroes;
+      if (cursor != null) {
+        String last;
+        try {
+          last = CursorCodec.decode(cursor, ID).get(ID).s();
+        } catch (IllegalArgumentException e) {
+          return Mono.error(new InvalidCursorException(cursor));
+        }
+        from = heroes.tailMap(last, false);
+      }
+      var page = from.values().stream()
+          .limit(limit)
+          .map(entry -> copy(entry.hero))
+          .collect(Collectors.toList());
+      if (page.isEmpty()) {
+        return Mono.just(new HeroPage(page, null));
+      }
+      var lastId = page.get(page.size() - 1).getId();
+      var next = page.size() < limit || heroes.higherKey(lastId) == null ? null
+          : CursorCodec.encode(Map.of(ID, AttributeValue.builder().s(lastId).build()));
+      return Mono.just(new HeroPage(page, next));
+    });
+  }
+
+  @Override
+  public Mono<Void> put(Hero hero) {
+    return update(hero).then();
+  }
+
+  @Override
+  public Flux<Hero> putAll(Flux<Hero> heroes) {
+    return heroes.concatMap(this::update);
+  }
+
+  /**
+   * Each hero is written like put, incrementing its version, so a new hero gets version 1 as in
+   * a DynamoDB batch. Writes are never left unprocessed, the result is always empty.
+   */
+  @Override
+  public Mono<List<Hero>> putBatch(List<Hero> heroes) {
+    return Flux.fromIterable(heroes)
+        .concatMap(this::update)
+        .then(Mono.just(List.of()));
+  }
+
+  @Override
+  public Mono<Hero> update(Hero hero) {
+    return replace(hero, null, false);
+  }
+
+  @Override
+  public Mono<Hero> update(Hero hero, long expectedVersion) {
+    return replace(hero, expectedVersion, false);
+  }
+
+  @Override
+  public Mono<Hero> updateExisting(Hero hero) {
+    return replace(hero, null, true);
+  }
+
+  @Override
+  public Mono<Hero> patch(Hero changes, Integer filmsIncrement, Long expectedVersion) {
+    if (changes.getFilms() != null && filmsIncrement != null) {
+      return Mono.error(new IllegalArgumentException("films can't be set and incremented"));
+    }
+    var id = changes.getId();
+    return Mono.fromCallable(() -> write(id, old -> {
+      if (old == null) {
+        throw expectedVersion == null
+            ? new HeroNotFoundException(id)
+            : new VersionMismatchException(id, expectedVersion);
+      }
+      if (expectedVersion != null && !expectedVersion.equals(old.getVersion())) {
+        throw new VersionMismatchException(id, expectedVersion);
+      }
+      var patched = copy(old);
+      if (changes.getName() != null) {
+        patched.setName(changes.getName());
+      }
+      if (changes.getUniverse() != null) {
+        patched.setUniverse(changes.getUniverse());
+      }
+      if (changes.getFilms() != null) {
+        patched.setFilms(changes.getFilms());
+      }
+      if (filmsIncrement != null) {
+        patched.setFilms((old.getFilms() == null ? 0 : old.getFilms()) + filmsIncrement);
+      }
+      patched.setVersion(nextVersion(old));
+      return patched;
+    }))
+        .map(written -> copy(written.hero));
+  }
+
+  @Override
+  public Mono<Hero> delete(String id) {
+    return Mono.fromCallable(() -> write(id, old -> null).old)
+        .map(InMemoryHeroStore::copy);
+  }
+
+  @Override
+  public Flux<UniverseStats> stats() {
+    return Flux.defer(() -> Flux.fromIterable(stats.entrySet()))
+        .map(universe -> universe.getValue().toStats(universe.getKey()))
+        .filter(universe -> universe.getHeroes() > 0);
+  }
+
+  @Override
+  public Mono<UniverseStats> stats(String universe) {
+    return Mono.fromSupplier(() -> {
+      var counts = stats.get(universe);
+      return counts == null ? new UniverseStats(universe, 0, 0) : counts.toStats(universe);
+    });
+  }
+
+  /**
+   * Replace all attributes of the hero, the written version is set on the hero.
+   *
+   * @param expectedVersion the version the stored hero must have, null for any
+   * @param existing whether the hero must already exist
+   */
+  private Mono<Hero> replace(Hero hero, Long expectedVersion, boolean existing) {
+    var id = hero.getId();
+    return Mono.fromCallable(() -> write(id, old -> {
+      if (existing && old == null) {
+        throw new HeroNotFoundException(id);
+      }
+      if (expectedVersion != null
+          && (old == null || !expectedVersion.equals(old.getVersion()))) {
+        throw new VersionMismatchException(id, expectedVersion);
+      }
+      var replaced = copy(hero);
+      replaced.setVersion(nextVersion(old));
+      return replaced;
+    }))
+        .map(written -> {
+          hero.setVersion(written.hero.getVersion());
+          return hero;
+        });
+  }
+
+  /**
+   * Store the hero computed from the stored one, or delete it when null, then update the stats
+   * and invalidate the cached hero. The change runs again if another write changed the hero
+   * in the meantime, it must not modify the stored hero.
+   */
+  private Written write(String id, Change change) throws Exception {
+    while (true) {
+      var entry = heroes.get(id);
+      var old = entry == null ? null : entry.hero;
+      var hero = change.apply(old);
+      boolean written;
+      if (entry == null) {
+        written = hero == null || heroes.putIfAbsent(id, new Entry(hero)) == null;
+      } else if (hero == null) {
+        written = heroes.remove(id, entry);
+      } else {
+        written = heroes.replace(id, entry, new Entry(hero));
+      }
+      if (written) {
+        record(old, hero);
+        heroCache.invalidate(id);
+        heroGetCoalescer.invalidate(id);
+        return new Written(old, hero);
+      }
+    }
+  }
+
+  private void record(Hero old, Hero hero) {
+    if (old != null && old.getUniverse() != null) {
+      stats.computeIfAbsent(old.getUniverse(), universe -> new Counts()).add(old, -1);
+    }
+    if (hero != null && hero.getUniverse() != null) {
+      stats.computeIfAbsent(hero.getUniverse(), universe -> new Counts()).add(hero, 1);
+    }
+  }
+
+  private static long nextVersion(Hero old) {
+    return old == null || old.getVersion() == null ? 1 : old.getVersion() + 1;
+  }
+
+  private static Hero copy(Hero hero) {
+    return new Hero(hero.getId(), hero.getName(), hero.getUniverse(), hero.getFilms(),
+        hero.getVersion());
+  }
+
+  @FunctionalInterface
+  private interface Change {
+    Hero apply(Hero old) throws Exception;
+  }
+
+  @AllArgsConstructor
+  private static final class Entry {
+    private final Hero hero;
+  }
+
+  @AllArgsConstructor
+  private static final class Written {
+    private final Hero old;
+    private final Hero hero;
+  }
+
+  private static final class Counts {
+    private final LongAdder heroes = new LongAdder();
+    private final LongAdder films = new LongAdder();
+
+    void add(Hero hero, int sign) {
+      heroes.add(sign);
+      films.add(sign * (hero.getFilms() == null ? 0L : hero.getFilms()));
+    }
+
+    UniverseStats toStats(String universe) {
+      return new UniverseStats(universe, heroes.sum(), films.sum());
+    }
+  }
+}
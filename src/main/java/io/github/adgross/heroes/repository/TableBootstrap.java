@@ -0,0 +1,83 @@
+package io.github.adgross.heroes.repository;
+
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+/**
+ * Creates the hero and stats tables when missing, once the application has started, retrying
+ * until DynamoDB answers. Reported as the tableBootstrap health, OUT_OF_SERVICE until both tables
+ * are ACTIVE, which keeps the readiness probe down meanwhile. With dynamodb.stats.rebuild-on-start
+ * the universe stats are then recounted from a scan before reporting ready.
+ */
+@Component
+@Profile("!" + InMemoryHeroStore.PROFILE)
+@Slf4j
+public class TableBootstrap implements ReactiveHealthIndicator, DisposableBean {
+  private final HeroRepository heroRepository;
+  private final HeroStatsRepository heroStatsRepository;
+  private final boolean rebuildStats;
+  private final Sinks.Empty<Void> ready = Sinks.empty();
+  private volatile Health health = Health.outOfService().withDetail("tables", "pending").build();
+  private Disposable bootstrap;
+
+  public TableBootstrap(HeroRepository heroRepository, HeroStatsRepository heroStatsRepository,
+                        @Value("${dynamodb.stats.rebuild-on-start:false}") boolean rebuildStats) {
+    this.heroRepository = heroRepository;
+    this.heroStatsRepository = heroStatsRepository;
+    this.rebuildStats = rebuildStats;
+  }
+
+  @EventListener(ApplicationStartedEvent.class)
+  public synchronized void start() {
+    if (bootstrap != null) {
+      return;
+    }
+    var started = System.nanoTime();
+    bootstrap = heroRepository.ensureTable()
+        .and(heroStatsRepository.ensureTable())
+        .then(rebuildStats ? heroRepository.rebuildStats() : Mono.empty())
+        .doOnError(e -> {
+          log.warn("DynamoDB tables not ready, retrying", e);
+          health = Health.down().withDetail("error", e.toString()).build();
+        })
+        .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(500))
+            .maxBackoff(Duration.ofSeconds(30)))
+        .subscribe(null, ready::tryEmitError, () -> {
+          var elapsed = Duration.ofNanos(System.nanoTime() - started);
+          log.info("DynamoDB tables ready in {} ms", elapsed.toMillis());
+          health = Health.up().withDetail("tables", "active").build();
+          ready.tryEmitEmpty();
+        });
+  }
+
+  /**
+   * Completes once the tables are ACTIVE.
+   */
+  public Mono<Void> ready() {
+    return ready.asMono();
+  }
+
+  @Override
+  public Mono<Health> health() {
+    return Mono.fromSupplier(() -> health);
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (bootstrap != null) {
+      bootstrap.dispose();
+    }
+  }
+}
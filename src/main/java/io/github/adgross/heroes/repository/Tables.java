@@ -0,0 +1,79 @@
+package io.github.adgross.heroes.repository;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.retry.backoff.FixedDelayBackoffStrategy;
+import software.amazon.awssdk.core.waiters.WaiterResponse;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceInUseException;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.TableStatus;
+import software.amazon.awssdk.services.dynamodb.waiters.DynamoDbAsyncWaiter;
+
+/**
+ * Table bootstrap shared by the repositories.
+ */
+@Slf4j
+final class Tables {
+  // the sdk default polls every 20 seconds, too slow for a starting pod
+  private static final Duration POLL_INTERVAL = Duration.ofMillis(500);
+  private static final int MAX_POLLS = 240;
+
+  private Tables() {
+  }
+
+  /**
+   * Describe the table and create it if it doesn't exist, completes once the table is ACTIVE.
+   * A table being created by another instance is waited for as well.
+   */
+  static Mono<Void> createIfMissing(DynamoDbAsyncClient ddb, String table,
+                                    Supplier<? extends CompletableFuture<?>> create) {
+    var describe = DescribeTableRequest.builder().tableName(table).build();
+    var created = Mono.fromFuture(create)
+        .then()
+        .doOnSuccess(ok -> log.info("Table created: " + table))
+        .onErrorResume(ResourceInUseException.class, e -> Mono.empty());
+    return Mono.fromFuture(() -> ddb.describeTable(describe))
+        .map(response -> response.table().tableStatus() == TableStatus.ACTIVE)
+        .onErrorResume(ResourceNotFoundException.class, e -> created.thenReturn(false))
+        .flatMap(active -> active ? Mono.empty() : awaitActive(ddb, describe))
+        .then();
+  }
+
+  /**
+   * Delete the table if it exists, completes once it is gone and can be created again.
+   */
+  static Mono<Void> deleteIfExists(DynamoDbAsyncClient ddb, String table) {
+    var delete = DeleteTableRequest.builder().tableName(table).build();
+    var describe = DescribeTableRequest.builder().tableName(table).build();
+    return Mono.fromFuture(() -> ddb.deleteTable(delete))
+        .then(await(ddb, waiter -> waiter.waitUntilTableNotExists(describe)))
+        .onErrorResume(ResourceNotFoundException.class, e -> Mono.empty());
+  }
+
+  private static Mono<Void> awaitActive(DynamoDbAsyncClient ddb, DescribeTableRequest describe) {
+    return await(ddb, waiter -> waiter.waitUntilTableExists(describe));
+  }
+
+  private static Mono<Void> await(DynamoDbAsyncClient ddb, Function<DynamoDbAsyncWaiter,
+      CompletableFuture<WaiterResponse<DescribeTableResponse>>> wait) {
+    return Mono.using(
+        () -> DynamoDbAsyncWaiter.builder()
+            .client(ddb)
+            .overrideConfiguration(waiter -> waiter
+                .maxAttempts(MAX_POLLS)
+                .backoffStrategy(FixedDelayBackoffStrategy.create(POLL_INTERVAL)))
+            .build(),
+        waiter -> Mono.fromFuture(() -> wait.apply(waiter))
+            .flatMap(response -> Mono.justOrEmpty(response.matched().exception()))
+            .flatMap(Mono::<Void>error),
+        DynamoDbAsyncWaiter::close);
+  }
+}
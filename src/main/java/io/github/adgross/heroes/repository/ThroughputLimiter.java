@@ -0,0 +1,147 @@
+package io.github.adgross.heroes.repository;
+
+import io.github.adgross.heroes.exception.ThroughputExceededException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.retry.RetryUtils;
+
+/**
+ * Client side limit of the DynamoDB reads and writes, each with an adaptive token bucket
+ * starting at dynamodb.rate-limit.read-rate and write-rate requests per second.
+ * DynamoDB throttling cuts the rate, which then grows back while there is no throttling.
+ * Requests over the rate fail at once with ThroughputExceededException instead of waiting.
+ */
+@Component
+public class ThroughputLimiter implements MeterBinder {
+  private static final Set<String> READ_OPERATIONS =
+      Set.of("GetItem", "BatchGetItem", "Query", "Scan", "TransactGetItems");
+
+  public enum Kind {
+    READ,
+    WRITE
+  }
+
+  private final boolean enabled;
+  private final AdaptiveTokenBucket reads;
+  private final AdaptiveTokenBucket writes;
+  private final LongAdder readsShed = new LongAdder();
+  private final LongAdder writesShed = new LongAdder();
+
+  public ThroughputLimiter(@Value("${dynamodb.rate-limit.enabled:false}") boolean enabled,
+                           @Value("${dynamodb.rate-limit.read-rate:1000}") double readRate,
+                           @Value("${dynamodb.rate-limit.write-rate:500}") double writeRate,
+                           @Value("${dynamodb.rate-limit.min-rate:1}") double minRate,
+                           @Value("${dynamodb.rate-limit.decrease-factor:0.5}")
+                               double decreaseFactor,
+                           @Value("${dynamodb.rate-limit.increase-rate:10}") double increaseRate) {
+    this.enabled = enabled;
+    reads = new AdaptiveTokenBucket(readRate, minRate, decreaseFactor, increaseRate,
+        System::nanoTime);
+    writes = new AdaptiveTokenBucket(writeRate, minRate, decreaseFactor, increaseRate,
+        System::nanoTime);
+  }
+
+  /**
+   * Take a token for each subscription to the operation, and turn DynamoDB throttling
+   * errors left after the sdk retries into ThroughputExceededException.
+   */
+  public <T> Mono<T> limit(Kind kind, Mono<T> mono) {
+    return Mono.defer(() -> {
+      if (!tryAcquire(kind)) {
+        return Mono.error(exceeded(kind));
+      }
+      return mono.onErrorMap(ThroughputLimiter::isThrottling, e -> throttledError(kind));
+    });
+  }
+
+  /**
+   * Take a token for each element, each one a DynamoDB request like a page of a scan. The first
+   * is taken on subscription, so a stream over the rate fails before any request. The others
+   * as each element arrives, the page is already read but the stream fails then with
+   * ThroughputExceededException and no further pages are requested.
+   */
+  public <T> Flux<T> limit(Kind kind, Flux<T> flux) {
+    return Flux.defer(() -> {
+      if (!tryAcquire(kind)) {
+        return Flux.error(exceeded(kind));
+      }
+      var first = new AtomicBoolean(true);
+      return flux.<T>handle((element, sink) -> {
+        if (first.getAndSet(false) || tryAcquire(kind)) {
+          sink.next(element);
+        } else {
+          sink.error(exceeded(kind));
+        }
+      }).onErrorMap(ThroughputLimiter::isThrottling, e -> throttledError(kind));
+    });
+  }
+
+  /**
+   * DynamoDB throttled a request of the given kind.
+   */
+  public void throttled(Kind kind) {
+    bucket(kind).throttled();
+  }
+
+  /**
+   * DynamoDB throttled a request of the given sdk operation, e.g. PutItem.
+   */
+  public void throttled(String operationName) {
+    throttled(READ_OPERATIONS.contains(operationName) ? Kind.READ : Kind.WRITE);
+  }
+
+  public static boolean isThrottling(Throwable e) {
+    return e instanceof SdkException && RetryUtils.isThrottlingException((SdkException) e);
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("dynamodb.rate-limit", reads, AdaptiveTokenBucket::rate)
+        .description("Current limit of DynamoDB requests per second")
+        .tag("kind", "read")
+        .register(registry);
+    Gauge.builder("dynamodb.rate-limit", writes, AdaptiveTokenBucket::rate)
+        .description("Current limit of DynamoDB requests per second")
+        .tag("kind", "write")
+        .register(registry);
+    FunctionCounter.builder("dynamodb.rate-limit.shed", readsShed, LongAdder::sum)
+        .description("Requests rejected by the DynamoDB rate limit")
+        .tag("kind", "read")
+        .register(registry);
+    FunctionCounter.builder("dynamodb.rate-limit.shed", writesShed, LongAdder::sum)
+        .description("Requests rejected by the DynamoDB rate limit")
+        .tag("kind", "write")
+        .register(registry);
+  }
+
+  private boolean tryAcquire(Kind kind) {
+    if (!enabled || bucket(kind).tryAcquire()) {
+      return true;
+    }
+    (kind == Kind.READ ? readsShed : writesShed).increment();
+    return false;
+  }
+
+  private ThroughputExceededException throttledError(Kind kind) {
+    throttled(kind);
+    return exceeded(kind);
+  }
+
+  private ThroughputExceededException exceeded(Kind kind) {
+    return new ThroughputExceededException(bucket(kind).retryAfter());
+  }
+
+  private AdaptiveTokenBucket bucket(Kind kind) {
+    return kind == Kind.READ ? reads : writes;
+  }
+}
@@ -2,20 +2,72 @@ package io.github.adgross.heroes.service;
 
 
 import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroBatchResult;
+import io.github.adgross.heroes.model.HeroImportResult;
+import io.github.adgross.heroes.model.HeroPage;
+import io.github.adgross.heroes.model.HeroPatchRequest;
 import io.github.adgross.heroes.model.HeroRequest;
+import io.github.adgross.heroes.model.UniverseStats;
+import java.util.List;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface HeroService {
   Flux<Hero> listHeroes();
 
+  /**
+   * List all heroes with only the given fields set, all fields if empty.
+   */
+  Flux<Hero> listHeroes(List<String> fields);
+
+  Mono<HeroPage> listHeroes(int limit, String cursor);
+
+  Flux<Hero> listHeroesByUniverse(String universe);
+
+  Flux<Hero> listHeroesByUniverse(String universe, List<String> fields);
+
   Mono<Hero> findById(String id);
 
+  Mono<Hero> findById(String id, List<String> fields);
+
+  Mono<HeroBatchResult> findByIds(List<String> ids);
+
   Mono<Hero> create(HeroRequest hero);
 
+  Flux<Hero> createAll(List<HeroRequest> heroes);
+
+  /**
+   * Validate and create each hero with a random id, reporting the result of every line.
+   */
+  Flux<HeroImportResult> importAll(Flux<HeroRequest> heroes);
+
   Mono<Hero> forceCreate(String id, HeroRequest hero);
 
   Mono<Hero> update(String id, HeroRequest hero);
 
+  /**
+   * Update the hero only if it is at the expected version, VersionMismatchException otherwise.
+   */
+  Mono<Hero> update(String id, HeroRequest hero, long expectedVersion);
+
+  /**
+   * Update the hero only if it exists, HeroNotFoundException otherwise.
+   */
+  Mono<Hero> updateExisting(String id, HeroRequest hero);
+
+  /**
+   * Change only the given attributes of an existing hero.
+   *
+   * @param expectedVersion the version the hero must have, null for any
+   */
+  Mono<Hero> patch(String id, HeroPatchRequest patch, Long expectedVersion);
+
   Mono<Hero> deleteById(String id);
+
+  /**
+   * Number of heroes and films of each universe with heroes.
+   */
+  Flux<UniverseStats> stats();
+
+  Mono<UniverseStats> stats(String universe);
 }
@@ -1,26 +1,109 @@
 package io.github.adgross.heroes.service;
 
+import io.github.adgross.heroes.cache.HeroCache;
+import io.github.adgross.heroes.cache.HeroSnapshot;
 import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroBatchResult;
+import io.github.adgross.heroes.model.HeroImportResult;
+import io.github.adgross.heroes.model.HeroPage;
+import io.github.adgross.heroes.model.HeroPatchRequest;
 import io.github.adgross.heroes.model.HeroRequest;
-import io.github.adgross.heroes.repository.HeroRepository;
+import io.github.adgross.heroes.model.UniverseStats;
+import io.github.adgross.heroes.repository.HeroGetCoalescer;
+import io.github.adgross.heroes.repository.HeroStore;
+import io.github.adgross.heroes.repository.HeroWriteBatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
 @Service
 public class HeroServiceImp implements HeroService {
+  private static final int IMPORT_CHUNK_SIZE = 25;
 
   @Autowired
-  HeroRepository heroRepository;
+  HeroStore heroStore;
+
+  @Autowired
+  HeroCache heroCache;
+
+  @Autowired
+  HeroGetCoalescer heroGetCoalescer;
+
+  // only present when dynamodb.write-batching.enabled, only creates are batched: batch writes
+  // can't return the replaced hero the universe stats need, and a new id is never replaced
+  @Autowired(required = false)
+  HeroWriteBatcher heroWriteBatcher;
+
+  // only present when dynamodb.snapshot.enabled, serves the list of all heroes
+  @Autowired(required = false)
+  HeroSnapshot heroSnapshot;
+
+  @Autowired
+  Validator validator;
+
+  @Value("${dynamodb.batch.concurrency:4}")
+  int importConcurrency;
 
   public Flux<Hero> listHeroes() {
-    return heroRepository.getAll();
+    if (heroSnapshot != null && heroSnapshot.isFresh()) {
+      return heroSnapshot.getAll();
+    }
+    return heroStore.getAll();
+  }
+
+  public Flux<Hero> listHeroes(List<String> fields) {
+    if (heroSnapshot != null && heroSnapshot.isFresh()) {
+      return heroSnapshot.getAll().map(hero -> hero.project(fields));
+    }
+    return heroStore.getAllProjected(fields);
+  }
+
+  public Mono<HeroPage> listHeroes(int limit, String cursor) {
+    return heroStore.getPage(limit, cursor);
+  }
+
+  public Flux<Hero> listHeroesByUniverse(String universe) {
+    return heroStore.getByUniverse(universe);
+  }
+
+  public Flux<Hero> listHeroesByUniverse(String universe, List<String> fields) {
+    return heroStore.getByUniverse(universe, fields);
   }
 
   public Mono<Hero> findById(String id) {
-    return heroRepository.get(id);
+    return heroCache.get(id, key -> heroGetCoalescer.get(key, heroStore::get));
+  }
+
+  /**
+   * The projection is applied to the cached hero, a single item read costs the same
+   * capacity with or without a DynamoDB projection.
+   */
+  public Mono<Hero> findById(String id, List<String> fields) {
+    return findById(id).map(hero -> hero.project(fields));
+  }
+
+  public Mono<HeroBatchResult> findByIds(List<String> ids) {
+    return heroStore.getAll(ids)
+        .collectList()
+        .map(heroes -> {
+          var found = heroes.stream().map(Hero::getId).collect(Collectors.toSet());
+          var missing = ids.stream()
+              .distinct()
+              .filter(id -> !found.contains(id))
+              .collect(Collectors.toList());
+          return new HeroBatchResult(heroes, missing);
+        });
   }
 
   public Mono<Hero> create(HeroRequest hero) {
@@ -30,8 +113,31 @@ public class HeroServiceImp implements HeroService {
     newHero.setUniverse(hero.getUniverse());
     newHero.setFilms(hero.getFilms());
 
-    return heroRepository.put(newHero)
-        .then(Mono.just(newHero));
+    if (heroWriteBatcher != null) {
+      return written(heroWriteBatcher.put(newHero));
+    }
+    return written(heroStore.put(newHero)
+        .then(Mono.just(newHero)));
+  }
+
+  public Flux<Hero> createAll(List<HeroRequest> heroes) {
+    var newHeroes = Flux.fromIterable(heroes)
+        .map(hero -> new Hero(
+            UUID.randomUUID().toString(), hero.getName(), hero.getUniverse(), hero.getFilms()));
+    var written = heroStore.putAll(newHeroes);
+    return heroSnapshot == null ? written : written.doOnNext(heroSnapshot::put);
+  }
+
+  /**
+   * Create the heroes with random ids, 25 lines per BatchWriteItem with up to
+   * dynamodb.batch.concurrency batches in flight. Lines are read as batches complete, so an
+   * import of any size uses the same memory. Results are emitted in line order, an invalid or
+   * unwritten line is reported and doesn't stop the import.
+   */
+  public Flux<HeroImportResult> importAll(Flux<HeroRequest> heroes) {
+    return heroes.index()
+        .buffer(IMPORT_CHUNK_SIZE)
+        .flatMapSequential(this::importChunk, importConcurrency);
   }
 
   public Mono<Hero> forceCreate(String id, HeroRequest hero) {
@@ -41,7 +147,7 @@ public class HeroServiceImp implements HeroService {
     updated.setUniverse(hero.getUniverse());
     updated.setFilms(hero.getFilms());
 
-    return heroRepository.update(updated);
+    return written(heroStore.update(updated));
   }
 
   public Mono<Hero> update(String id, HeroRequest hero) {
@@ -51,11 +157,93 @@ public class HeroServiceImp implements HeroService {
     updated.setUniverse(hero.getUniverse());
     updated.setFilms(hero.getFilms());
 
-    return heroRepository.update(updated);
+    return written(heroStore.update(updated));
+  }
+
+  public Mono<Hero> update(String id, HeroRequest hero, long expectedVersion) {
+    var updated = new Hero(id, hero.getName(), hero.getUniverse(), hero.getFilms());
+    return written(heroStore.update(updated, expectedVersion));
+  }
+
+  public Mono<Hero> updateExisting(String id, HeroRequest hero) {
+    var updated = new Hero(id, hero.getName(), hero.getUniverse(), hero.getFilms());
+    return written(heroStore.updateExisting(updated));
+  }
+
+  public Mono<Hero> patch(String id, HeroPatchRequest patch, Long expectedVersion) {
+    var changes = new Hero(id, patch.getName(), patch.getUniverse(), patch.getFilms());
+    return written(heroStore.patch(changes, patch.getFilmsIncrement(), expectedVersion));
   }
 
   public Mono<Hero> deleteById(String id) {
-    return heroRepository.delete(id);
+    var deleted = heroStore.delete(id);
+    return heroSnapshot == null ? deleted : deleted.doOnSuccess(old -> heroSnapshot.remove(id));
+  }
+
+  public Flux<UniverseStats> stats() {
+    return heroStore.stats();
+  }
+
+  public Mono<UniverseStats> stats(String universe) {
+    return heroStore.stats(universe);
+  }
+
+  private Flux<HeroImportResult> importChunk(List<Tuple2<Long, HeroRequest>> lines) {
+    var results = new ArrayList<HeroImportResult>(lines.size());
+    var heroes = new ArrayList<Hero>(lines.size());
+    for (var line : lines) {
+      var request = line.getT2();
+      var violations = validator.validate(request);
+      var result = new HeroImportResult(line.getT1() + 1, null, null);
+      if (violations.isEmpty()) {
+        var hero = new Hero(UUID.randomUUID().toString(),
+            request.getName(), request.getUniverse(), request.getFilms());
+        heroes.add(hero);
+        result.setId(hero.getId());
+      } else {
+        result.setError(describe(violations));
+      }
+      results.add(result);
+    }
+    if (heroes.isEmpty()) {
+      return Flux.fromIterable(results);
+    }
+    return heroStore.putBatch(heroes)
+        .map(unprocessed -> failed(unprocessed, "not written, table capacity exceeded"))
+        .onErrorResume(e -> Mono.just(failed(heroes, "not written, " + e.getMessage())))
+        .flatMapIterable(failed -> {
+          if (heroSnapshot != null) {
+            heroes.stream()
+                .filter(hero -> !failed.containsKey(hero.getId()))
+                .forEach(heroSnapshot::put);
+          }
+          for (var result : results) {
+            var error = failed.get(result.getId());
+            if (error != null) {
+              result.setId(null);
+              result.setError(error);
+            }
+          }
+          return results;
+        });
+  }
+
+  /**
+   * Apply the written hero to the snapshot, if there is one.
+   */
+  private Mono<Hero> written(Mono<Hero> write) {
+    return heroSnapshot == null ? write : write.doOnNext(heroSnapshot::put);
+  }
+
+  private static Map<String, String> failed(List<Hero> heroes, String error) {
+    return heroes.stream().collect(Collectors.toMap(Hero::getId, hero -> error));
+  }
+
+  private static String describe(Set<ConstraintViolation<HeroRequest>> violations) {
+    return violations.stream()
+        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+        .sorted()
+        .collect(Collectors.joining(", "));
   }
 
 }
@@ -0,0 +1,117 @@
+package io.github.adgross.heroes;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+import io.github.adgross.heroes.repository.TableBootstrap;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+/**
+ * Integration test of the access log, every request is logged.
+ * Note: need a working dynamodb connection, you can use a dynamodb-local
+ */
+@SpringBootTest(classes = HeroesApplication.class,
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "access-log.sample-rate=1")
+@AutoConfigureWebTestClient
+@ExtendWith(OutputCaptureExtension.class)
+class AccessLogTests {
+
+  @Autowired
+  private WebTestClient client;
+
+  @Autowired
+  private TableBootstrap tableBootstrap;
+
+  @Autowired
+  private ServerCodecConfigurer codecConfigurer;
+
+  @BeforeEach
+  void awaitTables() {
+    tableBootstrap.ready().block(Duration.ofSeconds(30));
+  }
+
+  @Test
+  void writeIsTimed(CapturedOutput output) throws InterruptedException {
+    var id = UUID.randomUUID();
+    client.post()
+        .uri("/api/v1/heroes/{id}", id)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .bodyValue("{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isCreated();
+
+    var line = await(output, "method=POST path=/api/v1/heroes/" + id);
+    assertTrue(field(line, "dynamodb_ops") >= 1, line);
+    assertTrue(field(line, "dynamodb_ms") > 0, line);
+  }
+
+  @Test
+  void jsonEncodingIsTimed(CapturedOutput output) throws InterruptedException {
+    var universe = "access-log-" + UUID.randomUUID();
+    for (int i = 0; i < 10; i++) {
+      client.post()
+          .uri("/api/v1/heroes")
+          .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+          .bodyValue("{\"name\":\"Clone " + i + "\",\"universe\":\"" + universe
+              + "\",\"films\":1}")
+          .accept(APPLICATION_JSON)
+          .exchange()
+          .expectStatus().isCreated();
+    }
+    client.get()
+        .uri("/api/v1/heroes?universe={universe}", universe)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk();
+
+    var line = await(output, "method=GET path=/api/v1/heroes?universe=" + universe);
+    assertTrue(field(line, "serialization_ms") > 0, line);
+    for (var writer : codecConfigurer.getWriters()) {
+      if (writer instanceof EncoderHttpMessageWriter) {
+        var encoder = ((EncoderHttpMessageWriter<?>) writer).getEncoder();
+        assertNotEquals(Jackson2JsonEncoder.class, encoder.getClass());
+        assertNotEquals(Jackson2SmileEncoder.class, encoder.getClass());
+      }
+    }
+  }
+
+  /**
+   * The access log line with the text, the logger is asynchronous.
+   */
+  private static String await(CapturedOutput output, String text) throws InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      var line = output.getOut().lines().filter(l -> l.contains(text)).findFirst();
+      if (line.isPresent()) {
+        return line.get();
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("Not logged: " + text);
+  }
+
+  private static double field(String line, String name) {
+    var matcher = Pattern.compile(" " + name + "=([0-9.]+)").matcher(line);
+    assertTrue(matcher.find(), line);
+    return Double.parseDouble(matcher.group(1));
+  }
+}
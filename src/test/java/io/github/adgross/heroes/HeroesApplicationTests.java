@@ -1,16 +1,24 @@
 package io.github.adgross.heroes;
 
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
 
 import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroImportResult;
+import io.github.adgross.heroes.repository.TableBootstrap;
+import java.time.Duration;
 import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.test.StepVerifier;
 
@@ -26,6 +34,14 @@ class HeroesApplicationTests {
   @Autowired
   private WebTestClient client;
 
+  @Autowired
+  private TableBootstrap tableBootstrap;
+
+  @BeforeEach
+  void awaitTables() {
+    tableBootstrap.ready().block(Duration.ofSeconds(30));
+  }
+
   void forceCreate(String requestId, String requestHero) {
     client.post()
         .uri("/api/v1/heroes/{id}", requestId)
@@ -141,6 +157,73 @@ class HeroesApplicationTests {
         .jsonPath("$.name").isEqualTo("Silver");
   }
 
+  @Test
+  void conditionalGetAndUpdate() {
+    String requestId = "00000000-0000-0000-0000-000000000017";
+    String requestHero = "{\"name\":\"Amy\",\"universe\":\"Sonic\",\"films\":1}";
+    forceCreate(requestId, requestHero);
+
+    var etag = client.get()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(Hero.class).getResponseHeaders().getETag();
+
+    client.get()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(IF_NONE_MATCH, etag)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isNotModified();
+
+    client.put()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header(IF_MATCH, etag)
+        .bodyValue(requestHero)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk();
+
+    // the etag changed with the update
+    client.put()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header(IF_MATCH, etag)
+        .bodyValue(requestHero)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+  }
+
+  @Test
+  void importHeroes() {
+    var lines = new StringBuilder();
+    for (int i = 1; i <= 60; i++) {
+      // line 30 is invalid
+      int films = i == 30 ? -1 : i;
+      lines.append("{\"name\":\"Clone ").append(i)
+          .append("\",\"universe\":\"Import\",\"films\":").append(films).append("}\n");
+    }
+
+    var result = client.post()
+        .uri("/api/v1/heroes/import")
+        .header(CONTENT_TYPE, APPLICATION_NDJSON_VALUE)
+        .bodyValue(lines.toString())
+        .accept(APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(HeroImportResult.class).getResponseBody();
+
+    StepVerifier.create(result)
+        .expectNextCount(29)
+        .expectNextMatches(line -> line.getLine() == 30 && line.getId() == null
+            && line.getError().equals("films must be greater than or equal to 0"))
+        .thenConsumeWhile(line -> line.getError() == null && line.getId() != null)
+        .verifyComplete();
+  }
+
   @Test
   void getStream() {
     Map<String, String> requests = Map.of(
@@ -167,4 +250,21 @@ class HeroesApplicationTests {
         .thenCancel()
         .verify();
   }
+
+  @Test
+  void readyOnceTablesAreActive() {
+    client.get()
+        .uri("/actuator/health/readiness")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.status").isEqualTo("UP");
+
+    client.get()
+        .uri("/actuator/health")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.status").isEqualTo("UP");
+  }
 }
@@ -0,0 +1,77 @@
+package io.github.adgross.heroes.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.adgross.heroes.model.Hero;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class CaffeineHeroCacheTest {
+
+  private final CaffeineHeroCache heroCache = new CaffeineHeroCache(2, Duration.ofMinutes(1));
+
+  @Test
+  public void loadOnceAndHit() {
+    Hero hero = new Hero("1", "Sonic", "Sonic", 1);
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 3; i++) {
+      StepVerifier.create(heroCache.get("1", id -> load(loads, hero)))
+          .expectNext(hero)
+          .verifyComplete();
+    }
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void emptyIsNotCached() {
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 2; i++) {
+      StepVerifier.create(heroCache.get("1", id -> load(loads, null)))
+          .verifyComplete();
+    }
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void invalidateReloads() {
+    Hero hero = new Hero("1", "Tail", "Sonic", 1);
+    Hero heroUpdated = new Hero("1", "Tails", "Sonic", 1);
+    AtomicInteger loads = new AtomicInteger();
+
+    StepVerifier.create(heroCache.get("1", id -> load(loads, hero)))
+        .expectNext(hero)
+        .verifyComplete();
+    heroCache.invalidate("1");
+    StepVerifier.create(heroCache.get("1", id -> load(loads, heroUpdated)))
+        .expectNext(heroUpdated)
+        .verifyComplete();
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void hitAndMissCounters() {
+    var registry = new SimpleMeterRegistry();
+    heroCache.bindTo(registry);
+    Hero hero = new Hero("1", "Sonic", "Sonic", 1);
+    AtomicInteger loads = new AtomicInteger();
+
+    heroCache.get("1", id -> load(loads, hero)).block();
+    heroCache.get("1", id -> load(loads, hero)).block();
+
+    assertEquals(1.0, registry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    assertEquals(1.0, registry.get("cache.gets").tag("result", "miss").functionCounter().count());
+  }
+
+  private Mono<Hero> load(AtomicInteger loads, Hero hero) {
+    return Mono.fromSupplier(() -> {
+      loads.incrementAndGet();
+      return hero;
+    });
+  }
+}
@@ -0,0 +1,100 @@
+package io.github.adgross.heroes.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.repository.HeroStore;
+import io.github.adgross.heroes.repository.TableBootstrap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class HeroSnapshotTest {
+
+  private final HeroStore heroStore = Mockito.mock(HeroStore.class);
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final HeroSnapshot snapshot = newSnapshot(Duration.ofMinutes(1));
+
+  @AfterEach
+  public void stop() {
+    snapshot.destroy();
+  }
+
+  @Test
+  public void servesLastScanWithLocalWrites() {
+    var sonic = new Hero("1", "Sonic", "Sonic", 1);
+    var tails = new Hero("2", "Tail", "Sonic", 1);
+    var eggman = new Hero("3", "Eggman", "Sonic", 1);
+    Mockito.when(heroStore.getAll()).thenReturn(Flux.just(sonic, tails, eggman));
+
+    assertFalse(snapshot.isFresh());
+    StepVerifier.create(snapshot.refresh())
+        .verifyComplete();
+    assertTrue(snapshot.isFresh());
+
+    var renamed = new Hero("2", "Tails", "Sonic", 1);
+    var knuckles = new Hero("4", "Knuckles", "Sonic", 1);
+    snapshot.put(renamed);
+    snapshot.put(knuckles);
+    snapshot.remove("3");
+
+    StepVerifier.create(snapshot.getAll())
+        .expectNext(sonic, renamed, knuckles)
+        .verifyComplete();
+  }
+
+  @Test
+  public void refreshKeepsRecentLocalWrites() {
+    var sonic = new Hero("1", "Sonic", "Sonic", 1);
+    var shadow = new Hero("5", "Shadow", "Sonic", 0);
+    Mockito.when(heroStore.getAll()).thenReturn(Flux.just(sonic));
+
+    // written just before the scan, which may not have seen it yet
+    snapshot.put(shadow);
+    StepVerifier.create(snapshot.refresh())
+        .verifyComplete();
+
+    StepVerifier.create(snapshot.getAll())
+        .expectNext(sonic, shadow)
+        .verifyComplete();
+  }
+
+  @Test
+  public void staleSnapshotIsNotFresh() {
+    var stale = newSnapshot(Duration.ZERO);
+    Mockito.when(heroStore.getAll()).thenReturn(Flux.empty());
+
+    StepVerifier.create(stale.refresh())
+        .verifyComplete();
+    assertFalse(stale.isFresh());
+    stale.destroy();
+  }
+
+  @Test
+  public void publishesSize() {
+    Mockito.when(heroStore.getAll())
+        .thenReturn(Flux.just(new Hero("1", "Sonic", "Sonic", 1)));
+
+    StepVerifier.create(snapshot.refresh())
+        .verifyComplete();
+    assertEquals(1.0, registry.get("heroes.snapshot.size").gauge().value());
+  }
+
+  private HeroSnapshot newSnapshot(Duration maxStaleness) {
+    // never ready, the tests refresh by hand
+    var tableBootstrap = Mockito.mock(TableBootstrap.class);
+    Mockito.when(tableBootstrap.ready()).thenReturn(Mono.never());
+    var meterRegistry = Mockito.mock(ObjectProvider.class);
+    Mockito.when(meterRegistry.getIfAvailable(Mockito.any())).thenReturn(registry);
+    return new HeroSnapshot(heroStore, tableBootstrap, Duration.ofHours(1), maxStaleness,
+        meterRegistry);
+  }
+}
@@ -0,0 +1,126 @@
+package io.github.adgross.heroes.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.adgross.heroes.exception.HeroNotFoundException;
+import io.github.adgross.heroes.model.Hero;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.WebHandler;
+import reactor.core.publisher.Mono;
+
+@ExtendWith(OutputCaptureExtension.class)
+public class AccessLogFilterTest {
+  private static final Duration NEVER = Duration.ofHours(1);
+
+  @Test
+  public void slowRequestIsLoggedWithItsTiming(CapturedOutput output) throws Exception {
+    var filter = new AccessLogFilter(0, Duration.ZERO);
+    WebHandler handler = exchange -> Mono.deferContextual(context -> {
+      RequestTiming.of(context).orElseThrow().addDynamodb(5_000_000);
+      return exchange.getResponse().setComplete();
+    });
+
+    get(filter, handler, "/slow?universe=Sonic");
+
+    var line = await(output, "path=/slow?universe=Sonic");
+    assertTrue(line.contains("method=GET"), line);
+    assertTrue(line.contains("status=200"), line);
+    assertTrue(line.contains("dynamodb_ms=5.000 dynamodb_ops=1"), line);
+    assertTrue(line.contains("reason=slow"), line);
+  }
+
+  @Test
+  public void fastRequestIsNotLoggedUnlessSampled(CapturedOutput output) throws Exception {
+    WebHandler handler = exchange -> exchange.getResponse().setComplete();
+
+    get(new AccessLogFilter(0, NEVER), handler, "/skipped");
+    get(new AccessLogFilter(1, NEVER), handler, "/sampled");
+
+    // logged in order, once the second is written the first would be too
+    assertTrue(await(output, "path=/sampled").contains("reason=sampled"));
+    assertFalse(output.getOut().contains("path=/skipped"));
+  }
+
+  @Test
+  public void errorIsLoggedWithItsStatus(CapturedOutput output) throws Exception {
+    var filter = new AccessLogFilter(0, NEVER);
+
+    get(filter, exchange -> Mono.error(new IllegalStateException()), "/failed");
+    get(new AccessLogFilter(0, Duration.ZERO),
+        exchange -> Mono.error(new HeroNotFoundException("1")), "/missing");
+
+    assertTrue(await(output, "path=/failed").contains("status=500"));
+    assertTrue(await(output, "path=/missing").contains("status=404"));
+  }
+
+  @Test
+  public void cancelledRequestIsLogged(CapturedOutput output) throws Exception {
+    var filter = new AccessLogFilter(0, NEVER);
+    var exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/abandoned"));
+
+    filter.filter(exchange, ignored -> Mono.never()).subscribe().dispose();
+
+    var line = await(output, "path=/abandoned");
+    assertTrue(line.contains("status=499"), line);
+    assertTrue(line.contains("reason=cancelled"), line);
+  }
+
+  @Test
+  public void encodingIsTimed() {
+    var timing = new RequestTiming();
+    var encoder = new Jackson2JsonEncoder();
+
+    var json = EncodingTimer.timed(Mono.just(new Hero("1", "Sonic", "Sonic", 1)),
+            input -> encoder.encode(input, DefaultDataBufferFactory.sharedInstance,
+                ResolvableType.forClass(Hero.class), MediaType.APPLICATION_JSON, Map.of()))
+        .map(buffer -> {
+          var text = buffer.toString(StandardCharsets.UTF_8);
+          DataBufferUtils.release(buffer);
+          return text;
+        })
+        .contextWrite(context -> context.put(RequestTiming.class, timing))
+        .blockLast();
+
+    assertEquals("{\"id\":\"1\",\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}", json);
+    assertTrue(timing.serialization() > 0);
+  }
+
+  private static void get(AccessLogFilter filter, WebHandler handler, String uri) {
+    WebTestClient.bindToWebHandler(handler)
+        .webFilter(filter)
+        .build()
+        .get()
+        .uri(uri)
+        .exchange();
+  }
+
+  /**
+   * The access log line with the text, the logger may be asynchronous.
+   */
+  private static String await(CapturedOutput output, String text) throws InterruptedException {
+    for (int i = 0; i < 200; i++) {
+      var line = output.getOut().lines().filter(l -> l.contains(text)).findFirst();
+      if (line.isPresent()) {
+        return line.get();
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("Not logged: " + text);
+  }
+}
@@ -1,14 +1,29 @@
 package io.github.adgross.heroes.controller;
 
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.ETAG;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
 
+import io.github.adgross.heroes.config.SmileCodecConfig;
+import io.github.adgross.heroes.exception.HeroNotFoundException;
+import io.github.adgross.heroes.exception.ThroughputExceededException;
+import io.github.adgross.heroes.exception.VersionMismatchException;
 import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.HeroBatchResult;
+import io.github.adgross.heroes.model.HeroImportResult;
+import io.github.adgross.heroes.model.HeroImportSummary;
+import io.github.adgross.heroes.model.HeroPage;
+import io.github.adgross.heroes.model.HeroPatchRequest;
 import io.github.adgross.heroes.model.HeroRequest;
+import io.github.adgross.heroes.model.UniverseStats;
 import io.github.adgross.heroes.service.HeroService;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
@@ -16,6 +31,8 @@ import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -187,6 +204,216 @@ public class HeroControllerTest {
         .jsonPath("$.id").isEqualTo(requestId);
   }
 
+  @Test
+  public void findByIdReturnsEtag() {
+    String requestId = UUID.randomUUID().toString();
+    Hero serverHero = new Hero(requestId, "Sonic", "Sonic", 1, 3L);
+
+    Mockito.when(heroService.findById(requestId)).thenReturn(Mono.just(serverHero));
+
+    client.get()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals(ETAG, "\"3\"")
+        .expectBody()
+        .jsonPath("$.version").isEqualTo(3);
+  }
+
+  @Test
+  public void findByIdNotModified() {
+    String requestId = UUID.randomUUID().toString();
+    Hero serverHero = new Hero(requestId, "Sonic", "Sonic", 1, 3L);
+
+    Mockito.when(heroService.findById(requestId)).thenReturn(Mono.just(serverHero));
+
+    client.get()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(IF_NONE_MATCH, "\"3\"")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isNotModified()
+        .expectBody().isEmpty();
+
+    client.get()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(IF_NONE_MATCH, "\"2\"")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk();
+  }
+
+  @Test
+  public void updateIfMatch() {
+    String requestHero = "{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}";
+    String requestId = UUID.randomUUID().toString();
+    Hero serverHero = new Hero(requestId, "Sonic", "Sonic", 1, 4L);
+
+    Mockito.when(heroService.update(
+        Mockito.eq(requestId), Mockito.any(HeroRequest.class), Mockito.eq(3L)))
+        .thenReturn(Mono.just(serverHero));
+
+    client.put()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header(IF_MATCH, "\"3\"")
+        .bodyValue(requestHero)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals(ETAG, "\"4\"");
+    Mockito.verify(heroService, Mockito.never())
+        .update(Mockito.any(String.class), Mockito.any(HeroRequest.class));
+  }
+
+  @Test
+  public void updateIfMatchFails() {
+    String requestHero = "{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}";
+    String requestId = UUID.randomUUID().toString();
+
+    Mockito.when(heroService.update(
+        Mockito.eq(requestId), Mockito.any(HeroRequest.class), Mockito.anyLong()))
+        .thenReturn(Mono.error(new VersionMismatchException(requestId, 3L)));
+
+    for (var etag : List.of("\"3\"", "W/\"3\"", "3")) {
+      client.put()
+          .uri("/api/v1/heroes/{id}", requestId)
+          .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+          .header(IF_MATCH, etag)
+          .bodyValue(requestHero)
+          .accept(APPLICATION_JSON)
+          .exchange()
+          .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    }
+  }
+
+  @Test
+  public void ifMatchAnyRequiresTheHero() {
+    String requestHero = "{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}";
+    String existing = UUID.randomUUID().toString();
+    String missing = UUID.randomUUID().toString();
+
+    Mockito.when(heroService.updateExisting(Mockito.eq(existing), Mockito.any(HeroRequest.class)))
+        .thenReturn(Mono.just(new Hero(existing, "Sonic", "Sonic", 1, 7L)));
+    Mockito.when(heroService.updateExisting(Mockito.eq(missing), Mockito.any(HeroRequest.class)))
+        .thenReturn(Mono.error(new HeroNotFoundException(missing)));
+    Mockito.when(heroService.patch(Mockito.eq(missing), Mockito.any(), Mockito.isNull()))
+        .thenReturn(Mono.error(new HeroNotFoundException(missing)));
+
+    client.put()
+        .uri("/api/v1/heroes/{id}", existing)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header(IF_MATCH, "*")
+        .bodyValue(requestHero)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals(ETAG, "\"7\"");
+    client.put()
+        .uri("/api/v1/heroes/{id}", missing)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header(IF_MATCH, "*")
+        .bodyValue(requestHero)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    client.patch()
+        .uri("/api/v1/heroes/{id}", missing)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header(IF_MATCH, "*")
+        .bodyValue("{\"name\":\"Tails\"}")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED);
+    Mockito.verify(heroService, Mockito.never())
+        .update(Mockito.any(String.class), Mockito.any(HeroRequest.class));
+  }
+
+  @Test
+  public void patchWithValidChanges() {
+    String requestId = UUID.randomUUID().toString();
+    Hero serverHero = new Hero(requestId, "Sonic", "Sonic", 3, 2L);
+
+    Mockito.when(heroService.patch(
+        requestId, new HeroPatchRequest(null, null, null, 2), null))
+        .thenReturn(Mono.just(serverHero));
+
+    client.patch()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .bodyValue("{\"filmsIncrement\":2}")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().valueEquals(ETAG, "\"2\"")
+        .expectBody()
+        .jsonPath("$.films").isEqualTo(3);
+  }
+
+  @Test
+  public void patchIfMatch() {
+    String requestId = UUID.randomUUID().toString();
+    Hero serverHero = new Hero(requestId, "Tails", "Sonic", 1, 5L);
+
+    Mockito.when(heroService.patch(
+        requestId, new HeroPatchRequest("Tails", null, null, null), 4L))
+        .thenReturn(Mono.just(serverHero));
+
+    client.patch()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .header(IF_MATCH, "\"4\"")
+        .bodyValue("{\"name\":\"Tails\"}")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.name").isEqualTo("Tails");
+  }
+
+  @Test
+  public void patchNotRegistered() {
+    String requestId = UUID.randomUUID().toString();
+
+    Mockito.when(heroService.patch(
+        Mockito.eq(requestId), Mockito.any(HeroPatchRequest.class), Mockito.isNull()))
+        .thenReturn(Mono.error(new HeroNotFoundException(requestId)));
+
+    client.patch()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .bodyValue("{\"films\":2}")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isNotFound();
+  }
+
+  @Test
+  public void patchWithInvalidChanges() {
+    String requestId = UUID.randomUUID().toString();
+    List<String> requests = List.of(
+        "{}",
+        "{\"films\":1,\"filmsIncrement\":1}",
+        "{\"name\":\"   \"}",
+        "{\"universe\":\"a\"}",
+        "{\"films\":-1}",
+        "{\"filmsIncrement\":0}"
+    );
+
+    for (var request : requests) {
+      client.patch()
+          .uri("/api/v1/heroes/{id}", requestId)
+          .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+          .bodyValue(request)
+          .accept(APPLICATION_JSON)
+          .exchange()
+          .expectStatus().isBadRequest();
+    }
+    Mockito.verify(heroService, Mockito.never())
+        .patch(Mockito.any(), Mockito.any(), Mockito.any());
+  }
+
   @Test
   public void updateWithValidIdAndHeroNotRegistered() {
     String requestHero = "{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}";
@@ -303,4 +530,345 @@ public class HeroControllerTest {
         .verify();
   }
 
+  @Test
+  public void getPage() {
+    var heroes = List.of(
+        new Hero("00000000-0000-0000-0000-000000000011", "Sonic", "Sonic", 1),
+        new Hero("00000000-0000-0000-0000-000000000012", "Tails", "Sonic", 1)
+    );
+
+    Mockito.when(heroService.listHeroes(2, "abc"))
+        .thenReturn(Mono.just(new HeroPage(heroes, "def")));
+
+    client.get()
+        .uri("/api/v1/heroes/page?limit={limit}&cursor={cursor}", 2, "abc")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.items.length()").isEqualTo(2)
+        .jsonPath("$.next").isEqualTo("def");
+  }
+
+  @Test
+  public void getPageWithInvalidLimit() {
+    for (var limit : List.of(0, -1, 1001)) {
+      client.get()
+          .uri("/api/v1/heroes/page?limit={limit}", limit)
+          .accept(APPLICATION_JSON)
+          .exchange()
+          .expectStatus().isBadRequest();
+    }
+  }
+
+  @Test
+  public void findByIds() {
+    String foundId = UUID.randomUUID().toString();
+    String missingId = UUID.randomUUID().toString();
+    var result = new HeroBatchResult(
+        List.of(new Hero(foundId, "Sonic", "Sonic", 1)), List.of(missingId));
+
+    Mockito.when(heroService.findByIds(List.of(foundId, missingId)))
+        .thenReturn(Mono.just(result));
+
+    client.post()
+        .uri("/api/v1/heroes/batch-get")
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .bodyValue(List.of(foundId, missingId))
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.heroes[0].id").isEqualTo(foundId)
+        .jsonPath("$.missing[0]").isEqualTo(missingId);
+  }
+
+  @Test
+  public void findByIdsWithInvalidIds() {
+    List<List<String>> requests = List.of(
+        List.of(),      // empty
+        List.of("999")  // not an uuid
+    );
+
+    for (var request : requests) {
+      client.post()
+          .uri("/api/v1/heroes/batch-get")
+          .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+          .bodyValue(request)
+          .accept(APPLICATION_JSON)
+          .exchange()
+          .expectStatus().isBadRequest();
+    }
+  }
+
+  @Test
+  public void createAllWithValidHeroes() {
+    String request = "{\"heroes\":["
+        + "{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1},"
+        + "{\"name\":\"Tails\",\"universe\":\"Sonic\",\"films\":1}]}";
+    var serverHeroes = Flux.just(
+        new Hero("1", "Sonic", "Sonic", 1),
+        new Hero("2", "Tails", "Sonic", 1));
+
+    Mockito.when(heroService.createAll(Mockito.anyList()))
+        .thenReturn(serverHeroes);
+
+    client.post()
+        .uri("/api/v1/heroes/bulk")
+        .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+        .bodyValue(request)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBodyList(Hero.class)
+        .hasSize(2);
+  }
+
+  @Test
+  public void importStreamsLineResults() {
+    String request = "{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}\n"
+        + "{\"name\":\"\",\"universe\":\"Sonic\",\"films\":1}\n";
+    var serverResults = Flux.just(
+        new HeroImportResult(1, "1", null),
+        new HeroImportResult(2, null, "name must not be blank"));
+
+    Mockito.when(heroService.importAll(Mockito.any())).thenReturn(serverResults);
+
+    var result = client.post()
+        .uri("/api/v1/heroes/import")
+        .header(CONTENT_TYPE, APPLICATION_NDJSON_VALUE)
+        .bodyValue(request)
+        .accept(APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(HeroImportResult.class).getResponseBody();
+
+    StepVerifier.create(result)
+        .expectNext(new HeroImportResult(1, "1", null))
+        .expectNext(new HeroImportResult(2, null, "name must not be blank"))
+        .verifyComplete();
+  }
+
+  @Test
+  public void importWithSummary() {
+    var serverResults = Flux.just(
+        new HeroImportResult(1, "1", null),
+        new HeroImportResult(2, "2", null),
+        new HeroImportResult(3, null, "films must be greater than or equal to 0"));
+
+    Mockito.when(heroService.importAll(Mockito.any())).thenReturn(serverResults);
+
+    client.post()
+        .uri("/api/v1/heroes/import?summary=true")
+        .header(CONTENT_TYPE, APPLICATION_NDJSON_VALUE)
+        .bodyValue("{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":1}\n")
+        .accept(APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody(HeroImportSummary.class)
+        .isEqualTo(new HeroImportSummary(2, 1));
+  }
+
+  @Test
+  public void stats() {
+    var serverStats = Flux.just(
+        new UniverseStats("Sonic", 3, 4),
+        new UniverseStats("Mario", 2, 2));
+
+    Mockito.when(heroService.stats()).thenReturn(serverStats);
+
+    client.get()
+        .uri("/api/v1/heroes/stats")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .json("[{\"universe\":\"Sonic\",\"heroes\":3,\"films\":4},"
+            + "{\"universe\":\"Mario\",\"heroes\":2,\"films\":2}]");
+  }
+
+  @Test
+  public void statsOfUniverse() {
+    Mockito.when(heroService.stats("Sonic"))
+        .thenReturn(Mono.just(new UniverseStats("Sonic", 3, 4)));
+
+    client.get()
+        .uri("/api/v1/heroes/stats/{universe}", "Sonic")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .json("{\"universe\":\"Sonic\",\"heroes\":3,\"films\":4}");
+  }
+
+  @Test
+  public void createAllWithInvalidHeroes() {
+    List<String> requests = List.of(
+        "{\"heroes\":[]}", // empty
+        "{\"heroes\":[{\"name\":\"Sonic\",\"universe\":\"Sonic\",\"films\":-1}]}",
+        "{\"heroes\":[{\"name\":\"\",\"universe\":\"Sonic\",\"films\":1}]}"
+    );
+
+    for (var request : requests) {
+      client.post()
+          .uri("/api/v1/heroes/bulk")
+          .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+          .bodyValue(request)
+          .accept(APPLICATION_JSON)
+          .exchange()
+          .expectStatus().isBadRequest();
+    }
+  }
+
+  @Test
+  public void getAllItemsOfUniverse() {
+    var heroes = Flux.just(
+        new Hero("00000000-0000-0000-0000-000000000041", "Mario", "Mario", 1),
+        new Hero("00000000-0000-0000-0000-000000000042", "Luigi", "Mario", 1)
+    );
+
+    Mockito.when(heroService.listHeroesByUniverse("Mario")).thenReturn(heroes);
+
+    client.get()
+        .uri("/api/v1/heroes?universe={universe}", "Mario")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(Hero.class)
+        .hasSize(2);
+    Mockito.verify(heroService, Mockito.never()).listHeroes();
+  }
+
+  @Test
+  public void findByIdWithFields() {
+    String requestId = UUID.randomUUID().toString();
+    Hero serverHero = new Hero(requestId, "Sonic", null, null);
+
+    Mockito.when(heroService.findById(requestId, List.of("id", "name")))
+        .thenReturn(Mono.just(serverHero));
+
+    client.get()
+        .uri("/api/v1/heroes/{id}?fields=id,name", requestId)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.name").isEqualTo("Sonic")
+        .jsonPath("$.universe").doesNotExist()
+        .jsonPath("$.films").doesNotExist();
+  }
+
+  @Test
+  public void getAllItemsWithFields() {
+    var heroes = Flux.just(
+        new Hero("00000000-0000-0000-0000-000000000051", "Sonic", null, null),
+        new Hero("00000000-0000-0000-0000-000000000052", "Tails", null, null)
+    );
+
+    Mockito.when(heroService.listHeroes(List.of("id", "name"))).thenReturn(heroes);
+
+    client.get()
+        .uri("/api/v1/heroes?fields=id,name")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(2)
+        .jsonPath("$[0].films").doesNotExist();
+  }
+
+  @Test
+  public void getWithInvalidFields() {
+    List<String> uris = List.of(
+        "/api/v1/heroes?fields=id,power",
+        "/api/v1/heroes/items?fields=power",
+        "/api/v1/heroes/" + UUID.randomUUID() + "?fields=power"
+    );
+
+    for (var uri : uris) {
+      client.get()
+          .uri(uri)
+          .exchange()
+          .expectStatus().isBadRequest();
+    }
+  }
+
+  @Test
+  public void throughputExceededIsShedWithRetryAfter() {
+    String requestId = UUID.randomUUID().toString();
+
+    Mockito.when(heroService.findById(requestId))
+        .thenReturn(Mono.error(new ThroughputExceededException(Duration.ofMillis(1500))));
+    Mockito.when(heroService.listHeroes())
+        .thenReturn(Flux.error(new ThroughputExceededException(Duration.ZERO)));
+
+    client.get()
+        .uri("/api/v1/heroes/{id}", requestId)
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+        .expectHeader().valueEquals(RETRY_AFTER, "2");
+
+    client.get()
+        .uri("/api/v1/heroes")
+        .accept(APPLICATION_JSON)
+        .exchange()
+        .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+        .expectHeader().valueEquals(RETRY_AFTER, "1");
+  }
+
+  @Test
+  public void smileIsNegotiated() {
+    var smile = MediaType.parseMediaType(SmileCodecConfig.APPLICATION_SMILE_VALUE);
+    var smileStream = MediaType.parseMediaType(SmileCodecConfig.APPLICATION_STREAM_SMILE_VALUE);
+    var heroList = List.of(
+        new Hero("00000000-0000-0000-0000-000000000041", "Sonic", "Sonic", 1, 2L),
+        new Hero("00000000-0000-0000-0000-000000000042", "Tails", "Sonic", 1, 1L)
+    );
+
+    Mockito.when(heroService.findById(heroList.get(0).getId()))
+        .thenReturn(Mono.just(heroList.get(0)));
+    Mockito.when(heroService.listHeroes()).thenReturn(Flux.fromIterable(heroList));
+
+    client.get()
+        .uri("/api/v1/heroes/{id}", heroList.get(0).getId())
+        .accept(smile)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(smile)
+        .expectBody(Hero.class).isEqualTo(heroList.get(0));
+
+    client.get()
+        .uri("/api/v1/heroes")
+        .accept(smile)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(smile)
+        .expectBodyList(Hero.class).isEqualTo(heroList);
+
+    var result = client.get()
+        .uri("/api/v1/heroes/items")
+        .accept(smileStream)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(smileStream)
+        .returnResult(Hero.class).getResponseBody();
+
+    StepVerifier.create(result)
+        .expectNextSequence(heroList)
+        .verifyComplete();
+  }
+
+  @Test
+  public void itemsDefaultToNdjson() {
+    Mockito.when(heroService.listHeroes()).thenReturn(Flux.empty());
+
+    client.get()
+        .uri("/api/v1/heroes/items")
+        .accept(MediaType.ALL)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(APPLICATION_NDJSON_VALUE);
+  }
+
 }
@@ -0,0 +1,42 @@
+package io.github.adgross.heroes.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+public class HeroTableSchemaTest {
+
+  private final TableSchema<Hero> staticSchema = HeroTableSchema.staticSchema();
+  private final TableSchema<Hero> beanSchema = HeroTableSchema.beanSchema();
+
+  @Test
+  public void staticMapsLikeBean() {
+    Hero hero = new Hero("1", "Sonic", "Sonic", 3);
+    var item = beanSchema.itemToMap(hero, true);
+
+    assertEquals(item, staticSchema.itemToMap(hero, true));
+    assertEquals(hero, staticSchema.mapToItem(item));
+  }
+
+  @Test
+  public void staticIgnoresNullsLikeBean() {
+    Hero hero = new Hero("1", null, "Sonic", null);
+
+    assertEquals(beanSchema.itemToMap(hero, true), staticSchema.itemToMap(hero, true));
+  }
+
+  @Test
+  public void staticHasSameKeys() {
+    TableMetadata expected = beanSchema.tableMetadata();
+    TableMetadata actual = staticSchema.tableMetadata();
+
+    assertEquals(expected.primaryPartitionKey(), actual.primaryPartitionKey());
+    assertEquals(expected.indexPartitionKey(Hero.UNIVERSE_INDEX),
+        actual.indexPartitionKey(Hero.UNIVERSE_INDEX));
+    assertEquals(expected.indexSortKey(Hero.UNIVERSE_INDEX),
+        actual.indexSortKey(Hero.UNIVERSE_INDEX));
+    assertEquals(expected.allKeys(), actual.allKeys());
+  }
+}
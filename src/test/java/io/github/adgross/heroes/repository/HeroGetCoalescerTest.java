@@ -0,0 +1,89 @@
+package io.github.adgross.heroes.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.adgross.heroes.cache.CaffeineHeroCache;
+import io.github.adgross.heroes.model.Hero;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+public class HeroGetCoalescerTest {
+
+  private final HeroGetCoalescer coalescer = new HeroGetCoalescer();
+
+  @Test
+  public void concurrentGetsShareOneLoad() {
+    Hero hero = new Hero("1", "Sonic", "Sonic", 1);
+    AtomicInteger loads = new AtomicInteger();
+    var registry = new SimpleMeterRegistry();
+    coalescer.bindTo(registry);
+
+    var gets = Flux.range(0, 10)
+        .flatMap(i -> coalescer.get("1", id -> slowLoad(loads, hero)));
+
+    StepVerifier.create(gets)
+        .expectNextCount(10)
+        .verifyComplete();
+    assertEquals(1, loads.get());
+    assertEquals(9.0, registry.get("heroes.get.coalesced").functionCounter().count());
+  }
+
+  @Test
+  public void completedLoadIsDropped() {
+    Hero hero = new Hero("1", "Sonic", "Sonic", 1);
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 2; i++) {
+      StepVerifier.create(coalescer.get("1", id -> slowLoad(loads, hero)))
+          .expectNext(hero)
+          .verifyComplete();
+    }
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void emptyAndErrorArePropagated() {
+    StepVerifier.create(coalescer.get("1", id -> Mono.empty()))
+        .verifyComplete();
+    StepVerifier.create(coalescer.get("1", id -> Mono.error(new IllegalStateException())))
+        .expectError(IllegalStateException.class)
+        .verify();
+  }
+
+  @Test
+  public void invalidatedLoadIsNotJoined() {
+    final Hero hero = new Hero("1", "Tail", "Sonic", 1);
+    Hero heroUpdated = new Hero("1", "Tails", "Sonic", 1);
+    var heroCache = new CaffeineHeroCache(10, Duration.ofMinutes(1));
+    Sinks.One<Hero> staleLoad = Sinks.one();
+
+    // a get reads the hero, then a write lands before the read completes
+    final var staleGet = heroCache.get("1", key -> coalescer.get(key, id -> staleLoad.asMono()))
+        .toFuture();
+    heroCache.invalidate("1");
+    coalescer.invalidate("1");
+
+    StepVerifier.create(heroCache.get("1", key -> coalescer.get(key, id -> Mono.just(heroUpdated))))
+        .expectNext(heroUpdated)
+        .expectComplete()
+        .verify(Duration.ofSeconds(1));
+    staleLoad.tryEmitValue(hero);
+    assertEquals(hero, staleGet.join());
+    StepVerifier.create(heroCache.get("1", key -> coalescer.get(key, id -> Mono.just(hero))))
+        .expectNext(heroUpdated)
+        .verifyComplete();
+  }
+
+  private Mono<Hero> slowLoad(AtomicInteger loads, Hero hero) {
+    return Mono.fromSupplier(() -> {
+      loads.incrementAndGet();
+      return hero;
+    }).delayElement(Duration.ofMillis(100));
+  }
+}
@@ -1,24 +1,69 @@
 package io.github.adgross.heroes.repository;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.adgross.heroes.cache.CaffeineHeroCache;
+import io.github.adgross.heroes.config.DynamoDbConfig;
+import io.github.adgross.heroes.config.RequestTiming;
+import io.github.adgross.heroes.exception.HeroNotFoundException;
+import io.github.adgross.heroes.exception.InvalidCursorException;
+import io.github.adgross.heroes.exception.VersionMismatchException;
 import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.UniverseStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.DeleteTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.TableStatus;
 
 /**
  * Integration test.
  * Only tests the HeroRepository.
  * Note: need a working dynamodb connection, you can use a dynamodb-local.
  */
-@SpringBootTest(classes = HeroRepository.class)
+@SpringBootTest(classes = {DynamoDbConfig.class, HeroRepository.class,
+    HeroStatsRepository.class, ThroughputLimiter.class, CaffeineHeroCache.class,
+    HeroGetCoalescer.class, SimpleMeterRegistry.class})
 public class HeroRepositoryTest {
 
   @Autowired
   HeroRepository heroRepository;
 
+  @Autowired
+  HeroStatsRepository heroStatsRepository;
+
+  @Autowired
+  MeterRegistry meterRegistry;
+
+  @Autowired
+  DynamoDbAsyncClient ddb;
+
+  @BeforeEach
+  public void ensureTables() {
+    heroRepository.ensureTable()
+        .and(heroStatsRepository.ensureTable())
+        .block(Duration.ofSeconds(30));
+  }
+
   @Test
   public void putAndGet() {
     String id = "123";
@@ -76,6 +121,44 @@ public class HeroRepositoryTest {
         .verifyComplete();
   }
 
+  @Test
+  public void resetPutAndGetByUniverse() {
+    resetDb();
+
+    Hero hero1 = new Hero("1", "Sonic",  "Sonic", 1);
+    Hero hero2 = new Hero("2", "Mario", "Mario", 1);
+    Hero hero3 = new Hero("3", "Amy", "Sonic", 0);
+
+    testPut(hero1);
+    testPut(hero2);
+    testPut(hero3);
+
+    StepVerifier.create(heroRepository.getByUniverse("Sonic"))
+        .expectNext(hero3)
+        .expectNext(hero1)
+        .verifyComplete();
+  }
+
+  @Test
+  public void resetPutAndGetAllProjected() {
+    resetDb();
+
+    testPut(new Hero("1", "Sonic",  "Sonic", 1));
+    testPut(new Hero("2", "Shadow", "Sonic", 0));
+    var expected = Set.of(new Hero("1", "Sonic", null, null), new Hero("2", "Shadow", null, null));
+
+    for (var getAll : List.of(
+        heroRepository.getAllProjected(List.of("id", "name")),
+        heroRepository.getAllParallel(List.of("id", "name")),
+        heroRepository.getByUniverse("Sonic", List.of("id", "name")))) {
+      StepVerifier.create(getAll)
+          .recordWith(HashSet::new)
+          .expectNextCount(2)
+          .expectRecordedMatches(expected::equals)
+          .verifyComplete();
+    }
+  }
+
   @Test
   public void resetPut5000AndGetAll() {
     resetDb();
@@ -96,6 +179,26 @@ public class HeroRepositoryTest {
         .verifyComplete();
   }
 
+  @Test
+  public void resetPut5000AndGetAllParallel() {
+    resetDb();
+
+    int limit = 5000;
+    var put5000 = Flux.range(1, limit)
+        .doOnNext(i -> testPut(new Hero(String.valueOf(i), "clone", "test", 1)))
+        .then();
+    var getAll = heroRepository.getAllParallel();
+
+    StepVerifier.create(put5000)
+        .verifyComplete();
+    StepVerifier.create(getAll)
+        .recordWith(HashSet::new)
+        .thenRequest(limit)
+        .expectNextCount(limit)
+        .expectRecordedMatches(heroes -> heroes.size() == limit)
+        .verifyComplete();
+  }
+
   @Test
   public void resetPutAndCancelGetAll() {
     resetDb();
@@ -116,6 +219,324 @@ public class HeroRepositoryTest {
         .verify();
   }
 
+  @Test
+  public void resetPutAndGetAllPages() {
+    resetDb();
+
+    var putSome = Flux.range(1, 25)
+        .doOnNext(i -> testPut(new Hero(String.valueOf(i), "clone", "test", 1)))
+        .then();
+    StepVerifier.create(putSome)
+        .verifyComplete();
+
+    Set<Hero> heroes = new HashSet<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      var page = heroRepository.getPage(10, cursor).block();
+      heroes.addAll(page.getItems());
+      cursor = page.getNext();
+      pages++;
+    } while (cursor != null);
+
+    assertEquals(25, heroes.size());
+    assertTrue(pages >= 3);
+  }
+
+  @Test
+  public void resetPutAndBatchGet() {
+    resetDb();
+
+    var putSome = Flux.range(1, 150)
+        .doOnNext(i -> testPut(new Hero(String.valueOf(i), "clone", "test", 1)))
+        .then();
+    StepVerifier.create(putSome)
+        .verifyComplete();
+
+    var ids = IntStream.rangeClosed(1, 160)
+        .mapToObj(String::valueOf)
+        .collect(Collectors.toList());
+    StepVerifier.create(heroRepository.getAll(ids))
+        .recordWith(HashSet::new)
+        .expectNextCount(150)
+        .expectRecordedMatches(heroes -> heroes.size() == 150)
+        .verifyComplete();
+  }
+
+  @Test
+  public void resetPutAllAndGetAll() {
+    resetDb();
+
+    int limit = 260;
+    var heroes = Flux.range(1, limit)
+        .map(i -> new Hero(String.valueOf(i), "clone", "test", 1));
+
+    StepVerifier.create(heroRepository.putAll(heroes))
+        .expectNextCount(limit)
+        .verifyComplete();
+    StepVerifier.create(heroRepository.getAll())
+        .expectNextCount(limit)
+        .verifyComplete();
+  }
+
+  @Test
+  public void resetPutAllAndGetAllOnDemand() throws InterruptedException {
+    resetDb();
+
+    // test page size is 10, so 20 pages
+    var heroes = Flux.range(1, 200)
+        .map(i -> new Hero(String.valueOf(i), "clone", "test", 1));
+    StepVerifier.create(heroRepository.putAll(heroes))
+        .expectNextCount(200)
+        .verifyComplete();
+
+    long before = scanCount();
+    StepVerifier.create(heroRepository.getAll(), 1)
+        .expectNextCount(1)
+        .thenCancel()
+        .verify();
+    Thread.sleep(500);
+
+    // the prefetched pages plus the one requested when the first was consumed
+    assertTrue(scanCount() - before <= 5);
+  }
+
+  @Test
+  public void getPageWithInvalidCursor() {
+    StepVerifier.create(heroRepository.getPage(10, "not a cursor"))
+        .expectError(InvalidCursorException.class)
+        .verify();
+    // well formed, but not a key of the table
+    for (var key : List.of("{\"x\":{\"S\":\"1\"}}", "{\"id\":{\"N\":\"1\"}}",
+        "{\"id\":{\"S\":\"1\"},\"x\":{\"S\":\"1\"}}")) {
+      var cursor = Base64.getUrlEncoder().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+      StepVerifier.create(heroRepository.getPage(10, cursor))
+          .expectError(InvalidCursorException.class)
+          .verify();
+    }
+  }
+
+  @Test
+  public void scanPagesAreTimedWithoutTheSubscriber() {
+    resetDb();
+    // test page size is 10, so 6 pages
+    var heroes = Flux.range(1, 55)
+        .map(i -> new Hero(String.valueOf(i), "clone", "test", 1));
+    StepVerifier.create(heroRepository.putAll(heroes))
+        .expectNextCount(55)
+        .verifyComplete();
+
+    var pages = meterRegistry.timer("heroes.repository",
+        "operation", "getAll", "outcome", "success");
+    final long before = pages.count();
+    var timing = new RequestTiming();
+    long start = System.nanoTime();
+    StepVerifier.create(heroRepository.getAll()
+            .delayElements(Duration.ofMillis(20))
+            .contextWrite(context -> context.put(RequestTiming.class, timing)))
+        .expectNextCount(55)
+        .verifyComplete();
+    long total = System.nanoTime() - start;
+
+    assertEquals(6, timing.dynamodbOperations());
+    assertTrue(timing.dynamodb() < total / 2, timing.dynamodb() + " of " + total);
+    assertEquals(before + 6, pages.count());
+  }
+
+  @Test
+  public void putRecordsTimerAndCapacity() {
+    var timer = meterRegistry.timer("heroes.repository", "operation", "put", "outcome", "success");
+    long before = timer.count();
+
+    testPut(new Hero("1234567", "Knuckles", "Sonic", 1));
+
+    assertEquals(before + 1, timer.count());
+    var capacity = meterRegistry.find("dynamodb.consumed.capacity")
+        .tags("operation", "UpdateItem", "capacity", "write")
+        .summary();
+    assertTrue(capacity != null && capacity.totalAmount() > 0);
+  }
+
+  @Test
+  public void getIsStronglyConsistent() {
+    String id = UUID.randomUUID().toString();
+    Hero hero = new Hero(id, "Amy", "Sonic", 1);
+    testPut(hero);
+    testGet(id, hero);
+
+    var capacity = meterRegistry.find("dynamodb.consumed.capacity")
+        .tags("operation", "GetItem", "table", "heroes-test")
+        .summary();
+    // an eventually consistent read of a small item consumes half a unit
+    assertEquals(1.0, capacity.totalAmount() / capacity.count());
+  }
+
+  @Test
+  public void writesUpdateUniverseStats() {
+    String universe = "stats-" + UUID.randomUUID();
+    Hero hero = new Hero(UUID.randomUUID().toString(), "Mario", universe, 2);
+
+    testPut(hero);
+    testPut(new Hero(UUID.randomUUID().toString(), "Luigi", universe, 1));
+    testStats(universe, 2, 3);
+
+    testUpdate(new Hero(hero.getId(), "Mario", universe, 5));
+    testStats(universe, 2, 6);
+
+    // moving the hero to another universe
+    String other = "stats-" + UUID.randomUUID();
+    testUpdate(new Hero(hero.getId(), "Mario", other, 5));
+    testStats(universe, 1, 1);
+    testStats(other, 1, 5);
+
+    testDeleteById(hero.getId(), new Hero(hero.getId(), "Mario", other, 5));
+    testStats(other, 0, 0);
+
+    var created = Flux.range(1, 30)
+        .map(i -> new Hero(UUID.randomUUID().toString(), "clone", other, 1));
+    StepVerifier.create(heroRepository.putAll(created))
+        .expectNextCount(30)
+        .verifyComplete();
+    testStats(other, 30, 30);
+  }
+
+  @Test
+  public void rebuildStatsRecountsTheHeroes() {
+    String universe = "stats-" + UUID.randomUUID();
+    String stale = "stats-" + UUID.randomUUID();
+    testPut(new Hero(UUID.randomUUID().toString(), "Mario", universe, 2));
+    testPut(new Hero(UUID.randomUUID().toString(), "Luigi", universe, 1));
+    // counters off from the heroes, as for heroes written before the counters existed
+    heroStatsRepository.record(null, new Hero("1", "Wario", universe, 4))
+        .and(heroStatsRepository.record(null, new Hero("2", "Yoshi", stale, 1)))
+        .block(Duration.ofSeconds(10));
+    testStats(universe, 3, 7);
+
+    StepVerifier.create(heroRepository.rebuildStats())
+        .verifyComplete();
+    testStats(universe, 2, 3);
+    testStats(stale, 0, 0);
+    StepVerifier.create(heroStatsRepository.getAll().filter(stats -> stats.getUniverse()
+            .equals(stale)))
+        .verifyComplete();
+  }
+
+  @Test
+  public void updateExistingRequiresTheHero() {
+    String id = UUID.randomUUID().toString();
+    StepVerifier.create(heroRepository.updateExisting(new Hero(id, "Luigi", "Mario", 1)))
+        .verifyError(HeroNotFoundException.class);
+    testGetNotExist(id);
+
+    testPut(new Hero(id, "Luigi", "Mario", 1));
+    StepVerifier.create(heroRepository.updateExisting(new Hero(id, "Luigi", "Mario", 2)))
+        .expectNext(new Hero(id, "Luigi", "Mario", 2, 2L))
+        .verifyComplete();
+  }
+
+  @Test
+  public void writesIncrementVersion() {
+    String id = UUID.randomUUID().toString();
+    testPut(new Hero(id, "Mario", "Mario", 1));
+    StepVerifier.create(heroRepository.get(id))
+        .expectNextMatches(hero -> hero.getVersion() == 1)
+        .verifyComplete();
+
+    StepVerifier.create(heroRepository.update(new Hero(id, "Mario", "Mario", 2), 1))
+        .expectNextMatches(hero -> hero.getVersion() == 2)
+        .verifyComplete();
+    StepVerifier.create(heroRepository.update(new Hero(id, "Mario", "Mario", 3), 1))
+        .expectError(VersionMismatchException.class)
+        .verify();
+    StepVerifier.create(heroRepository.update(new Hero(id, "Mario", "Mario", 3)))
+        .expectNextMatches(hero -> hero.getVersion() == 3)
+        .verifyComplete();
+
+    StepVerifier.create(heroRepository.get(id))
+        .expectNextMatches(hero -> hero.getFilms() == 3 && hero.getVersion() == 3)
+        .verifyComplete();
+  }
+
+  @Test
+  public void conditionalUpdateOfMissingHeroFails() {
+    var hero = new Hero(UUID.randomUUID().toString(), "Mario", "Mario", 1);
+    StepVerifier.create(heroRepository.update(hero, 1))
+        .expectError(VersionMismatchException.class)
+        .verify();
+    testGetNotExist(hero.getId());
+  }
+
+  @Test
+  public void patchChangesOnlyGivenAttributes() {
+    String id = UUID.randomUUID().toString();
+    String universe = "patch-" + UUID.randomUUID();
+    testPut(new Hero(id, "Mario", universe, 1));
+
+    var rename = new Hero(id, "Super Mario", null, null);
+    StepVerifier.create(heroRepository.patch(rename, null, null))
+        .expectNext(new Hero(id, "Super Mario", universe, 1))
+        .verifyComplete();
+
+    var increment = new Hero(id, null, null, null);
+    var twice = Flux.range(0, 2)
+        .flatMap(i -> heroRepository.patch(increment, 2, null))
+        .then(heroRepository.get(id));
+    StepVerifier.create(twice)
+        .expectNextMatches(hero -> hero.equals(new Hero(id, "Super Mario", universe, 5))
+            && hero.getVersion() == 4)
+        .verifyComplete();
+    testStats(universe, 1, 5);
+
+    StepVerifier.create(heroRepository.patch(increment, 1, 3L))
+        .expectError(VersionMismatchException.class)
+        .verify();
+  }
+
+  @Test
+  public void patchMissingHeroFails() {
+    var changes = new Hero(UUID.randomUUID().toString(), null, null, 3);
+    StepVerifier.create(heroRepository.patch(changes, null, null))
+        .expectError(HeroNotFoundException.class)
+        .verify();
+    testGetNotExist(changes.getId());
+  }
+
+  @Test
+  public void ensureTableCreatesMissingTableOnce() {
+    var table = "heroes-stats-" + UUID.randomUUID();
+    var stats = new HeroStatsRepository(ddb, table, true);
+    var describe = DescribeTableRequest.builder().tableName(table).build();
+
+    StepVerifier.create(stats.ensureTable().then(stats.ensureTable()))
+        .verifyComplete();
+    StepVerifier.create(Mono.fromFuture(() -> ddb.describeTable(describe)))
+        .expectNextMatches(response -> response.table().tableStatus() == TableStatus.ACTIVE)
+        .verifyComplete();
+
+    ddb.deleteTable(DeleteTableRequest.builder().tableName(table).build()).join();
+  }
+
+  @Test
+  public void resetTableRecreatesTheStats() {
+    var table = "heroes-stats-" + UUID.randomUUID();
+    var stats = new HeroStatsRepository(ddb, table, true);
+    var describe = DescribeTableRequest.builder().tableName(table).build();
+    stats.ensureTable()
+        .then(stats.record(null, new Hero("1", "Mario", "Mario", 2)))
+        .block(Duration.ofSeconds(30));
+
+    StepVerifier.create(stats.resetTable())
+        .verifyComplete();
+    StepVerifier.create(Mono.fromFuture(() -> ddb.describeTable(describe)))
+        .expectNextMatches(response -> response.table().tableStatus() == TableStatus.ACTIVE)
+        .verifyComplete();
+    StepVerifier.create(stats.get("Mario"))
+        .expectNext(new UniverseStats("Mario", 0, 0))
+        .verifyComplete();
+
+    ddb.deleteTable(DeleteTableRequest.builder().tableName(table).build()).join();
+  }
+
   @Test
   public void resetDb() {
     var deleteAll = heroRepository.resetTable();
@@ -128,6 +549,18 @@ public class HeroRepositoryTest {
   // Helper methods
   // --- --- --- --- --- ---
 
+  private void testStats(String universe, long heroes, long films) {
+    StepVerifier.create(heroStatsRepository.get(universe))
+        .expectNext(new UniverseStats(universe, heroes, films))
+        .verifyComplete();
+  }
+
+  private long scanCount() {
+    return meterRegistry.find("dynamodb.requests").tag("operation", "Scan").timers().stream()
+        .mapToLong(timer -> timer.count())
+        .sum();
+  }
+
   private void testGet(String id, Hero hero) {
     var get = heroRepository.get(id);
     StepVerifier.create(get)
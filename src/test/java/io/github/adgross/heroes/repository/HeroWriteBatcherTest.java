@@ -0,0 +1,91 @@
+package io.github.adgross.heroes.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.github.adgross.heroes.exception.UnprocessedItemsException;
+import io.github.adgross.heroes.exception.WriteQueueFullException;
+import io.github.adgross.heroes.model.Hero;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class HeroWriteBatcherTest {
+
+  private final HeroStore heroStore = Mockito.mock(HeroStore.class);
+  private HeroWriteBatcher batcher;
+
+  @AfterEach
+  public void tearDown() {
+    batcher.destroy();
+  }
+
+  @Test
+  public void writesAreGroupedInBatchesOf25() {
+    batcher = new HeroWriteBatcher(heroStore, Duration.ofMillis(50), 100, 4);
+    Mockito.when(heroStore.putBatch(Mockito.anyList()))
+        .thenReturn(Mono.just(List.of()));
+
+    var writes = Flux.range(1, 30)
+        .flatMap(i -> batcher.put(new Hero(String.valueOf(i), "clone", "test", 1)));
+
+    StepVerifier.create(writes)
+        .expectNextCount(30)
+        .verifyComplete();
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<List<Hero>> batches = ArgumentCaptor.forClass(List.class);
+    Mockito.verify(heroStore, Mockito.times(2)).putBatch(batches.capture());
+    assertEquals(25, batches.getAllValues().get(0).size());
+    assertEquals(5, batches.getAllValues().get(1).size());
+  }
+
+  @Test
+  public void unprocessedItemFailsOnlyItsCaller() {
+    batcher = new HeroWriteBatcher(heroStore, Duration.ofMillis(50), 100, 4);
+    Hero ok = new Hero("1", "Sonic", "Sonic", 1);
+    Hero failed = new Hero("2", "Tails", "Sonic", 1);
+    Mockito.when(heroStore.putBatch(Mockito.anyList()))
+        .thenReturn(Mono.just(List.of(failed)));
+
+    var okWrite = batcher.put(ok);
+    var failedWrite = batcher.put(failed);
+
+    StepVerifier.create(Mono.zip(okWrite.materialize(), failedWrite.materialize()))
+        .expectNextMatches(both -> ok.equals(both.getT1().get())
+            && both.getT2().getThrowable() instanceof UnprocessedItemsException)
+        .verifyComplete();
+  }
+
+  @Test
+  public void batchErrorFailsAllCallers() {
+    batcher = new HeroWriteBatcher(heroStore, Duration.ofMillis(50), 100, 4);
+    Mockito.when(heroStore.putBatch(Mockito.anyList()))
+        .thenReturn(Mono.error(new IllegalStateException()));
+
+    var writes = Flux.range(1, 3)
+        .flatMap(i -> batcher.put(new Hero(String.valueOf(i), "clone", "test", 1))
+            .onErrorResume(IllegalStateException.class, e -> Mono.empty()));
+
+    StepVerifier.create(writes)
+        .verifyComplete();
+  }
+
+  @Test
+  public void rejectWhenTooManyPending() {
+    batcher = new HeroWriteBatcher(heroStore, Duration.ofMillis(50), 1, 4);
+    Mockito.when(heroStore.putBatch(Mockito.anyList()))
+        .thenReturn(Mono.<List<Hero>>never());
+
+    batcher.put(new Hero("1", "Sonic", "Sonic", 1)).subscribe();
+
+    StepVerifier.create(batcher.put(new Hero("2", "Tails", "Sonic", 1)))
+        .expectError(WriteQueueFullException.class)
+        .verify();
+  }
+}
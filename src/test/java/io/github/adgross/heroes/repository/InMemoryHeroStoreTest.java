@@ -0,0 +1,152 @@
+package io.github.adgross.heroes.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.github.adgross.heroes.cache.HeroCache;
+import io.github.adgross.heroes.exception.HeroNotFoundException;
+import io.github.adgross.heroes.exception.InvalidCursorException;
+import io.github.adgross.heroes.exception.VersionMismatchException;
+import io.github.adgross.heroes.model.Hero;
+import io.github.adgross.heroes.model.UniverseStats;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+public class InMemoryHeroStoreTest {
+
+  private final HeroCache heroCache = Mockito.mock(HeroCache.class);
+  private final InMemoryHeroStore store = new InMemoryHeroStore(heroCache, new HeroGetCoalescer());
+
+  @Test
+  public void writesIncrementTheVersion() {
+    var sonic = new Hero("1", "Sonic", "Sonic", 1);
+
+    StepVerifier.create(store.update(sonic))
+        .expectNextMatches(hero -> hero.getVersion() == 1)
+        .verifyComplete();
+    StepVerifier.create(store.update(new Hero("1", "Sonic", "Sonic", 2), 1))
+        .expectNextMatches(hero -> hero.getVersion() == 2)
+        .verifyComplete();
+    StepVerifier.create(store.update(new Hero("1", "Sonic", "Sonic", 3), 1))
+        .verifyError(VersionMismatchException.class);
+    StepVerifier.create(store.get("1"))
+        .expectNextMatches(hero -> hero.getFilms() == 2 && hero.getVersion() == 2)
+        .verifyComplete();
+    Mockito.verify(heroCache, Mockito.times(2)).invalidate("1");
+  }
+
+  @Test
+  public void updateExistingRequiresTheHero() {
+    StepVerifier.create(store.updateExisting(new Hero("1", "Sonic", "Sonic", 1)))
+        .verifyError(HeroNotFoundException.class);
+    store.put(new Hero("1", "Sonic", "Sonic", 1)).block();
+
+    StepVerifier.create(store.updateExisting(new Hero("1", "Sonic", "Sonic", 2)))
+        .expectNext(new Hero("1", "Sonic", "Sonic", 2, 2L))
+        .verifyComplete();
+  }
+
+  @Test
+  public void storesCopies() {
+    var sonic = new Hero("1", "Sonic", "Sonic", 1);
+    store.put(sonic).block();
+    sonic.setName("Changed");
+    store.get("1").block().setName("Changed");
+
+    StepVerifier.create(store.get("1"))
+        .expectNextMatches(hero -> hero.getName().equals("Sonic"))
+        .verifyComplete();
+  }
+
+  @Test
+  public void patchIncrementsFilms() {
+    store.put(new Hero("1", "Sonic", "Sonic", 1)).block();
+
+    StepVerifier.create(store.patch(new Hero("1", "Super Sonic", null, null), 2, 1L))
+        .expectNext(new Hero("1", "Super Sonic", "Sonic", 3))
+        .verifyComplete();
+    StepVerifier.create(store.patch(new Hero("1", null, null, null), 1, 1L))
+        .verifyError(VersionMismatchException.class);
+    StepVerifier.create(store.patch(new Hero("2", "Tails", null, null), null, null))
+        .verifyError(HeroNotFoundException.class);
+  }
+
+  @Test
+  public void concurrentPatchesAreNotLost() {
+    store.put(new Hero("1", "Sonic", "Sonic", 0)).block();
+
+    Flux.range(0, 1000)
+        .parallel(4)
+        .runOn(Schedulers.parallel())
+        .flatMap(i -> store.patch(new Hero("1", null, null, null), 1, null))
+        .sequential()
+        .blockLast();
+
+    var hero = store.get("1").block();
+    assertEquals(1000, hero.getFilms());
+    assertEquals(1001, hero.getVersion());
+  }
+
+  @Test
+  public void pagesFollowTheCursor() {
+    Flux.range(1, 5)
+        .map(i -> new Hero(String.valueOf(i), "Clone " + i, "Test", 1))
+        .as(store::putAll)
+        .blockLast();
+
+    var first = store.getPage(2, null).block();
+    assertEquals(List.of("1", "2"), ids(first.getItems()));
+    assertNotNull(first.getNext());
+    var second = store.getPage(2, first.getNext()).block();
+    assertEquals(List.of("3", "4"), ids(second.getItems()));
+    var last = store.getPage(2, second.getNext()).block();
+    assertEquals(List.of("5"), ids(last.getItems()));
+    assertNull(last.getNext());
+
+    StepVerifier.create(store.getPage(2, "not-a-cursor"))
+        .verifyError(InvalidCursorException.class);
+    var otherKey = Base64.getUrlEncoder()
+        .encodeToString("{\"x\":{\"S\":\"1\"}}".getBytes(StandardCharsets.UTF_8));
+    StepVerifier.create(store.getPage(2, otherKey))
+        .verifyError(InvalidCursorException.class);
+  }
+
+  @Test
+  public void universeHeroesAreSortedByName() {
+    store.put(new Hero("1", "Tails", "Sonic", 1)).block();
+    store.put(new Hero("2", "Mario", "Mario", 1)).block();
+    store.put(new Hero("3", "Knuckles", "Sonic", 1)).block();
+
+    StepVerifier.create(store.getByUniverse("Sonic", List.of("name")))
+        .expectNext(new Hero(null, "Knuckles", null, null))
+        .expectNext(new Hero(null, "Tails", null, null))
+        .verifyComplete();
+  }
+
+  @Test
+  public void statsFollowWrites() {
+    store.put(new Hero("1", "Sonic", "Sonic", 2)).block();
+    store.put(new Hero("2", "Tails", "Sonic", 1)).block();
+    store.update(new Hero("2", "Tails", "Tails", 3)).block();
+    store.delete("1").block();
+
+    StepVerifier.create(store.stats())
+        .expectNext(new UniverseStats("Tails", 1, 3))
+        .verifyComplete();
+    StepVerifier.create(store.stats("Sonic"))
+        .expectNext(new UniverseStats("Sonic", 0, 0))
+        .verifyComplete();
+  }
+
+  private static List<String> ids(List<Hero> heroes) {
+    return heroes.stream().map(Hero::getId).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,124 @@
+package io.github.adgross.heroes.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.github.adgross.heroes.exception.ThroughputExceededException;
+import io.github.adgross.heroes.repository.ThroughputLimiter.Kind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+public class ThroughputLimiterTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  @Test
+  public void bucketRejectsOverRateUntilRefilled() {
+    var bucket = new AdaptiveTokenBucket(10, 1, 0.5, 1, clock::get);
+
+    for (int i = 0; i < 10; i++) {
+      assertTrue(bucket.tryAcquire());
+    }
+    assertFalse(bucket.tryAcquire());
+    assertEquals(Duration.ofMillis(100), bucket.retryAfter());
+
+    clock.addAndGet(Duration.ofMillis(100).toNanos());
+    assertTrue(bucket.tryAcquire());
+    assertFalse(bucket.tryAcquire());
+  }
+
+  @Test
+  public void throttlingCutsRateOncePerSecondThenRecovers() {
+    var bucket = new AdaptiveTokenBucket(10, 1, 0.5, 1, clock::get);
+
+    bucket.throttled();
+    bucket.throttled();
+    assertEquals(5.0, bucket.rate());
+
+    clock.addAndGet(Duration.ofMillis(500).toNanos());
+    bucket.throttled();
+    assertEquals(5.0, bucket.rate());
+
+    clock.addAndGet(Duration.ofMillis(500).toNanos());
+    bucket.throttled();
+    assertEquals(2.5, bucket.rate());
+
+    clock.addAndGet(Duration.ofSeconds(2).toNanos());
+    assertEquals(4.5, bucket.rate());
+
+    for (int i = 0; i < 20; i++) {
+      bucket.throttled();
+      clock.addAndGet(Duration.ofMillis(500).toNanos());
+    }
+    assertEquals(1.0, bucket.rate());
+  }
+
+  @Test
+  public void limiterShedsOverRate() {
+    var limiter = new ThroughputLimiter(true, 2, 100, 1, 0.5, 1);
+    var registry = new SimpleMeterRegistry();
+    limiter.bindTo(registry);
+
+    for (int i = 0; i < 2; i++) {
+      StepVerifier.create(limiter.limit(Kind.READ, Mono.just(i)))
+          .expectNext(i)
+          .verifyComplete();
+    }
+    StepVerifier.create(limiter.limit(Kind.READ, Mono.just(3)))
+        .expectError(ThroughputExceededException.class)
+        .verify();
+    StepVerifier.create(limiter.limit(Kind.WRITE, Mono.just(4)))
+        .expectNext(4)
+        .verifyComplete();
+
+    assertEquals(1.0, registry.get("dynamodb.rate-limit.shed").tag("kind", "read")
+        .functionCounter().count());
+  }
+
+  @Test
+  public void limiterChargesEachPage() {
+    var limiter = new ThroughputLimiter(true, 3, 100, 1, 0.5, 1);
+    var registry = new SimpleMeterRegistry();
+    limiter.bindTo(registry);
+
+    StepVerifier.create(limiter.limit(Kind.READ, Flux.range(0, 5)))
+        .expectNext(0, 1, 2)
+        .expectError(ThroughputExceededException.class)
+        .verify();
+    StepVerifier.create(limiter.limit(Kind.READ, Flux.range(0, 5)))
+        .expectError(ThroughputExceededException.class)
+        .verify();
+
+    assertEquals(2.0, registry.get("dynamodb.rate-limit.shed").tag("kind", "read")
+        .functionCounter().count());
+  }
+
+  @Test
+  public void throttlingErrorsAreReportedAndMapped() {
+    var limiter = new ThroughputLimiter(false, 100, 100, 1, 0.5, 1);
+    var registry = new SimpleMeterRegistry();
+    limiter.bindTo(registry);
+    var throttled = ProvisionedThroughputExceededException.builder()
+        .statusCode(400)
+        .awsErrorDetails(AwsErrorDetails.builder()
+            .errorCode("ProvisionedThroughputExceededException")
+            .build())
+        .build();
+
+    StepVerifier.create(limiter.limit(Kind.WRITE, Mono.error(throttled)))
+        .expectError(ThroughputExceededException.class)
+        .verify();
+
+    assertEquals(50.0, registry.get("dynamodb.rate-limit").tag("kind", "write").gauge().value(),
+        1.0);
+    assertEquals(100.0, registry.get("dynamodb.rate-limit").tag("kind", "read").gauge().value());
+  }
+}